@@ -1,16 +1,34 @@
 package stellar.core;
 
+import com.sun.istack.internal.Nullable;
 import stellar.core.input.InputAdapter;
 import stellar.core.sprite.SpriteManager;
+import stellar.core.sprite.animation.Animator;
+import stellar.core.thread.BudgetScheduler;
 import stellar.core.thread.FixedGameLoop;
+import stellar.core.thread.FrameGraph;
+import stellar.core.thread.OffloadTask;
+import stellar.core.thread.Offloader;
+import stellar.core.thread.TimingWheel;
+import stellar.core.state.FadeState;
 import stellar.core.state.GameState;
+import stellar.core.state.TickStatistics;
 import stellar.core.thread.UpdateMethod;
 import stellar.log.DebugLogger;
 
 import java.awt.Graphics2D;
 import java.awt.image.BufferStrategy;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 
 public class GameManager {
 
@@ -19,10 +37,25 @@ public class GameManager {
 
     private SpriteManager spriteManager;
     private InputAdapter inputAdapter;
+    private final Animator animator = new Animator();
+    private final BudgetScheduler scheduler = new BudgetScheduler();
+    private final TimingWheel timers = new TimingWheel();
+    private final Offloader offloader = new Offloader();
+    // work handed to the tick thread from other threads, such as independent states.
+    private final ConcurrentLinkedQueue<Runnable> posted = new ConcurrentLinkedQueue<>();
+    private FrameGraph frameGraph;
+    private volatile OffloadTask<GameState> transition;
 
     private int tickRate;
     private boolean isGameRunning;
-    private final List<GameState> gameStack = new ArrayList<>();
+    // copied on every change so the stack can be changed from any thread while it is being ticked or drawn.
+    private volatile GameState[] gameStack = new GameState[0];
+    private final Object stackLock = new Object();
+    private final Map<GameState, TickStatistics> tickStatistics = new ConcurrentHashMap<>();
+
+    // independent states tick here, the states waiting on the pool are only touched by the tick thread.
+    private ForkJoinPool statePool = ForkJoinPool.commonPool();
+    private final List<ForkJoinTask<?>> stateTasks = new ArrayList<>();
 
     private BufferStrategy bufferStrategy;
     private FixedGameLoop fixedGameLoop;
@@ -81,6 +114,9 @@ public class GameManager {
      */
     public void onTick() {
         invokeTick();
+        if (frameGraph != null) {
+            frameGraph.run();
+        }
     }
 
     /**
@@ -114,14 +150,114 @@ public class GameManager {
      * @param graphics the draw graphics to use.
      */
     private void invokeDraw(final Graphics2D graphics) {
-        gameStack.forEach(state -> state.onDraw(graphics));
+        GameState[] states = gameStack;
+        // nothing below the topmost opaque state can be seen.
+        int bottom = 0;
+        for (int i = states.length - 1; i > 0; i--) {
+            if (states[i].isOpaque()) {
+                bottom = i;
+                break;
+            }
+        }
+
+        for (int i = bottom; i < states.length; i++) {
+            states[i].onDraw(graphics);
+        }
     }
 
     /**
      * Iterate through all states in the stack and call their onTick method.
      */
     private void invokeTick() {
-        gameStack.forEach(GameState::onTick);
+        // advance all animations from the shared clock first so states see this tick's frames.
+        animator.tick();
+        // deliver the results of offloaded work and anything posted from other threads first.
+        offloader.drain();
+        runPosted();
+        // timers that are due run before the states so they see the result.
+        timers.tick();
+        tickStates();
+        // then spend the rest of the tick's budget on deferred work.
+        scheduler.tick();
+    }
+
+    private void runPosted() {
+        Runnable runnable;
+        while ((runnable = posted.poll()) != null) {
+            try {
+                runnable.run();
+            } catch (RuntimeException exception) {
+                DebugLogger.e("Posted work " + runnable.getClass() + " failed: " + exception);
+            }
+        }
+    }
+
+    /**
+     * Run something on the tick thread at the start of the next tick. Safe to call from any thread, this is how
+     * independent states and background work reach the services that are tick thread only.
+     *
+     * @param runnable the work.
+     */
+    public void post(Runnable runnable) {
+        posted.add(runnable);
+    }
+
+    /**
+     * Tick every state that is not paused. Independent states are ticked on the state pool while the others are
+     * ticked here in order, this returns once all of them are done so drawing never sees a state halfway through a tick.
+     */
+    private void tickStates() {
+        GameState[] states = gameStack;
+        // states below the topmost state that pauses them don't tick.
+        int bottom = 0;
+        for (int i = states.length - 1; i > 0; i--) {
+            if (states[i].pausesBelow()) {
+                bottom = i;
+                break;
+            }
+        }
+
+        for (int i = bottom; i < states.length; i++) {
+            GameState state = states[i];
+            if (state.isIndependent()) {
+                stateTasks.add(statePool.submit(() -> tickState(state)));
+            }
+        }
+
+        for (int i = bottom; i < states.length; i++) {
+            if (!states[i].isIndependent()) {
+                tickState(states[i]);
+            }
+        }
+
+        try {
+            for (ForkJoinTask<?> task : stateTasks) {
+                task.join();
+            }
+        } finally {
+            stateTasks.clear();
+        }
+    }
+
+    /**
+     * Tick a single state, an exception only stops that state's tick.
+     *
+     * @param state the state.
+     */
+    private void tickState(GameState state) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            state.onTick();
+        } catch (RuntimeException exception) {
+            DebugLogger.e("GameState " + state.getClass() + " failed to tick: " + exception);
+            failed = true;
+        }
+
+        TickStatistics statistics = tickStatistics.get(state);
+        if (statistics != null) {
+            statistics.record(System.nanoTime() - start, failed);
+        }
     }
 
     /**
@@ -160,6 +296,8 @@ public class GameManager {
     }
 
     /**
+     * The sprite manager is safe to use from any thread, including GameState#onLoad and independent states.
+     *
      * @return the sprite manager for handling images/tiles.
      */
     public SpriteManager getSpriteManager() {
@@ -167,16 +305,312 @@ public class GameManager {
     }
 
     /**
-     * Push a state to the stack.
+     * The animator, scheduler and timers are not thread safe and belong to the tick thread. Independent states tick on
+     * another thread and must reach them through {@link #post(Runnable)}.
+     *
+     * @return the animator that is advanced every tick.
+     */
+    public Animator getAnimator() {
+        return animator;
+    }
+
+    /**
+     * Tick thread only, see {@link #getAnimator()}.
+     *
+     * @return the scheduler that runs time sliced jobs after the states every tick.
+     */
+    public BudgetScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Tick thread only, see {@link #getAnimator()}.
+     *
+     * @return the timers that are advanced every tick, for running callbacks a number of ticks from now.
+     */
+    public TimingWheel getTimers() {
+        return timers;
+    }
+
+    /**
+     * Set the graph of jobs to run every tick after the states ticked, jobs pinned to the main thread run on the
+     * game loop thread.
+     *
+     * @param frameGraph the graph, or null.
+     */
+    public void setFrameGraph(@Nullable FrameGraph frameGraph) {
+        this.frameGraph = frameGraph;
+    }
+
+    /**
+     * @return the graph of jobs run every tick, or null.
+     */
+    @Nullable
+    public FrameGraph getFrameGraph() {
+        return frameGraph;
+    }
+
+    /**
+     * Run blocking work such as saving or loading off the tick thread.
+     *
+     * @param task       the task.
+     * @param onComplete invoked with the result on the tick thread.
+     * @param <T>        the type of the result.
+     * @return the task, which can be cancelled.
+     */
+    public <T> OffloadTask<T> offload(Callable<T> task, Consumer<T> onComplete) {
+        return offloader.submit(null, task, onComplete, null);
+    }
+
+    /**
+     * Run blocking work such as saving or loading off the tick thread, the work is cancelled with its state.
+     *
+     * @param owner      the state the work belongs to, see {@link #cancelOffloads(GameState)}.
+     * @param task       the task.
+     * @param onComplete invoked with the result on the tick thread, or null.
+     * @param onError    invoked with the exception on the tick thread if the task failed, or null to log it.
+     * @param <T>        the type of the result.
+     * @return the task, which can be cancelled.
+     */
+    public <T> OffloadTask<T> offload(GameState owner, Callable<T> task, @Nullable Consumer<T> onComplete,
+                                      @Nullable Consumer<Exception> onError) {
+        return offloader.submit(owner, task, onComplete, onError);
+    }
+
+    /**
+     * Cancel the offloaded work of a state, running tasks are interrupted and their callbacks are never invoked.
+     *
+     * @param state the state.
+     */
+    public void cancelOffloads(GameState state) {
+        offloader.cancel(state);
+    }
+
+    /**
+     * Set the pool independent states are ticked on, the common pool by default.
+     *
+     * @param pool the pool.
+     */
+    public void setStatePool(ForkJoinPool pool) {
+        statePool = pool;
+    }
+
+    /**
+     * @param state the state.
+     * @return how long the state takes to tick, or null if it is not in the stack.
+     */
+    @Nullable
+    public TickStatistics getTickStatistics(GameState state) {
+        return tickStatistics.get(state);
+    }
+
+    /**
+     * Push a state to the stack. Safe to call from any thread.
      *
      * @param state the state to push.
      */
     public void push(GameState state) {
-        if (gameStack.contains(state)) {
-            DebugLogger.e("Could not add new GameState: " + state.getClass() + ", this already exists in the stack!");
-            return;
+        synchronized (stackLock) {
+            if (indexOf(state) != -1) {
+                DebugLogger.e("Could not add new GameState: " + state.getClass() + ", this already exists in the stack!");
+                return;
+            }
+
+            GameState[] states = Arrays.copyOf(gameStack, gameStack.length + 1);
+            states[states.length - 1] = state;
+            tickStatistics.put(state, new TickStatistics());
+            gameStack = states;
+        }
+    }
+
+    /**
+     * Remove the top state of the stack, its offloaded work is cancelled. Safe to call from any thread.
+     *
+     * @return the removed state, or null if the stack is empty.
+     */
+    @Nullable
+    public GameState pop() {
+        GameState state;
+        synchronized (stackLock) {
+            if (gameStack.length == 0) {
+                return null;
+            }
+
+            state = gameStack[gameStack.length - 1];
+            gameStack = Arrays.copyOf(gameStack, gameStack.length - 1);
+            tickStatistics.remove(state);
+        }
+
+        cancelOffloads(state);
+        return state;
+    }
+
+    /**
+     * Replace the top state of the stack in a single step, so no tick or draw sees the stack without either state.
+     * The offloaded work of the replaced state is cancelled. Safe to call from any thread.
+     *
+     * @param state the new top state.
+     * @return the replaced state, or null if the stack was empty and the state was pushed.
+     */
+    @Nullable
+    public GameState replace(GameState state) {
+        GameState replaced;
+        synchronized (stackLock) {
+            int index = indexOf(state);
+            if (index != -1 && index != gameStack.length - 1) {
+                DebugLogger.e("Could not replace with GameState: " + state.getClass() + ", this already exists in the stack!");
+                return null;
+            }
+
+            if (gameStack.length == 0) {
+                gameStack = new GameState[]{state};
+                tickStatistics.put(state, new TickStatistics());
+                return null;
+            }
+
+            replaced = gameStack[gameStack.length - 1];
+            if (replaced == state) {
+                return null;
+            }
+
+            GameState[] states = gameStack.clone();
+            states[states.length - 1] = state;
+            tickStatistics.remove(replaced);
+            tickStatistics.put(state, new TickStatistics());
+            gameStack = states;
+        }
+
+        cancelOffloads(replaced);
+        return replaced;
+    }
+
+    /**
+     * Remove a state from the stack, its offloaded work is cancelled. Safe to call from any thread.
+     *
+     * @param state the state.
+     * @return true if the state was in the stack.
+     */
+    public boolean remove(GameState state) {
+        synchronized (stackLock) {
+            int index = indexOf(state);
+            if (index == -1) {
+                return false;
+            }
+
+            GameState[] states = new GameState[gameStack.length - 1];
+            System.arraycopy(gameStack, 0, states, 0, index);
+            System.arraycopy(gameStack, index + 1, states, index, states.length - index);
+            tickStatistics.remove(state);
+            gameStack = states;
+        }
+
+        cancelOffloads(state);
+        return true;
+    }
+
+    /**
+     * Replace a state anywhere in the stack in a single step, its offloaded work is cancelled.
+     * Safe to call from any thread.
+     *
+     * @param existing    the state to replace.
+     * @param replacement the state to put in its place.
+     * @return true if the existing state was in the stack.
+     */
+    public boolean replace(GameState existing, GameState replacement) {
+        synchronized (stackLock) {
+            int index = indexOf(existing);
+            if (index == -1) {
+                return false;
+            }
+            if (indexOf(replacement) != -1) {
+                DebugLogger.e("Could not replace with GameState: " + replacement.getClass() + ", this already exists in the stack!");
+                return false;
+            }
+
+            GameState[] states = gameStack.clone();
+            states[index] = replacement;
+            tickStatistics.remove(existing);
+            tickStatistics.put(replacement, new TickStatistics());
+            gameStack = states;
+        }
+
+        cancelOffloads(existing);
+        return true;
+    }
+
+    /**
+     * Load a state in the background and then make it the top state, replacing the current one.
+     *
+     * @param state the state.
+     * @return the loading task.
+     * @see #prepare(GameState, int)
+     */
+    public OffloadTask<GameState> prepare(GameState state) {
+        return prepare(state, 0);
+    }
+
+    /**
+     * Load a state in the background with {@link GameState#onLoad()} and then make it the top state,
+     * replacing the current one. The current state keeps ticking and drawing while the new state loads, the switch
+     * happens at the start of a tick. Preparing another state cancels the previous transition.
+     *
+     * @param state     the state.
+     * @param fadeTicks the amount of ticks to fade out before switching and to fade in after, 0 to switch at once.
+     * @return the loading task, cancelled with the state.
+     */
+    public OffloadTask<GameState> prepare(GameState state, int fadeTicks) {
+        if (transition != null) {
+            transition.cancel();
+        }
+
+        transition = offload(state, () -> {
+            state.onLoad();
+            return state;
+        }, loaded -> {
+            transition = null;
+            GameState current = peek();
+            if (fadeTicks <= 0 || current == null) {
+                replace(loaded);
+                return;
+            }
+
+            // switch underneath the fade once the screen is covered.
+            push(new FadeState(this, fadeTicks, () -> {
+                if (!replace(current, loaded)) {
+                    push(loaded);
+                }
+            }));
+        }, exception -> {
+            transition = null;
+            DebugLogger.e("Could not load GameState " + state.getClass() + ": " + exception);
+        });
+        return transition;
+    }
+
+    /**
+     * @return the top state of the stack, or null if the stack is empty.
+     */
+    @Nullable
+    public GameState peek() {
+        GameState[] states = gameStack;
+        return states.length == 0 ? null : states[states.length - 1];
+    }
+
+    /**
+     * @return a snapshot of the stack, bottom first.
+     */
+    public List<GameState> getStates() {
+        return Collections.unmodifiableList(Arrays.asList(gameStack));
+    }
+
+    private int indexOf(GameState state) {
+        GameState[] states = gameStack;
+        for (int i = 0; i < states.length; i++) {
+            if (states[i].equals(state)) {
+                return i;
+            }
         }
-        gameStack.add(state);
+        return -1;
     }
 
 }
@@ -2,6 +2,10 @@ package stellar.core.collision;
 
 import java.awt.Rectangle;
 
+/**
+ * @deprecated use {@link BoundingBox2D}, see {@link #toBox2D()} for converting.
+ */
+@Deprecated
 public class BoundingBox {
 
     /**
@@ -71,7 +75,15 @@ public class BoundingBox {
      * otherwise false.
      */
     public boolean doesIntersect(BoundingBox box) {
-        return bounds.intersects(box.getBounds());
+        return width > 0 && height > 0 && box.width > 0 && box.height > 0
+                && x < box.x + box.width && box.x < x + width && y < box.y + box.height && box.y < y + height;
+    }
+
+    /**
+     * @return a new BoundingBox2D with the same bounds.
+     */
+    public BoundingBox2D toBox2D() {
+        return new BoundingBox2D(x, y, width, height);
     }
 
     public int getX() {
@@ -1,35 +1,33 @@
 package stellar.core.collision;
 
-import stellar.core.location.Location;
-
 import java.awt.geom.Rectangle2D;
 
-public class BoundingBox2D {
+/**
+ * An axis aligned bounding box stored as its min and max corners.
+ * Boxes are updated in place and every test works on the corners directly, nothing is allocated.
+ */
+public final class BoundingBox2D {
 
-    private Location location;
-    private double x, y, width, height;
-    private Rectangle2D rect2D;
+    private double minX, minY, maxX, maxY;
 
-    public BoundingBox2D(double x, double y, double width, double height) {
-        this.x = x;
-        this.y = y;
+    public BoundingBox2D() {
+    }
 
-        this.width = width;
-        this.height = height;
-        rect2D = new Rectangle2D.Double(x, y, width, height);
+    public BoundingBox2D(double x, double y, double width, double height) {
+        set(x, y, width, height);
     }
 
     /**
-     * Update this BoundingBox.
+     * Update this BoundingBox, keeping its size.
      *
      * @param x the origin X.
      * @param y the origin Y.
      */
     public void set(double x, double y) {
-        this.x = x;
-        this.y = y;
-
-        rect2D = new Rectangle2D.Double(x, y, width, height);
+        maxX = x + (maxX - minX);
+        maxY = y + (maxY - minY);
+        minX = x;
+        minY = y;
     }
 
     /**
@@ -41,23 +39,71 @@ public class BoundingBox2D {
      * @param height the height of this BoundingBox.
      */
     public void set(double x, double y, double width, double height) {
-        this.x = x;
-        this.y = y;
+        minX = x;
+        minY = y;
+        maxX = x + width;
+        maxY = y + height;
+    }
 
-        this.width = width;
-        this.height = height;
-        rect2D = new Rectangle2D.Double(x, y, width, height);
+    /**
+     * Copy the bounds of another BoundingBox.
+     *
+     * @param box the other BoundingBox.
+     */
+    public void set(BoundingBox2D box) {
+        minX = box.minX;
+        minY = box.minY;
+        maxX = box.maxX;
+        maxY = box.maxY;
+    }
+
+    /**
+     * Update this BoundingBox from its corners.
+     *
+     * @param minX the min X.
+     * @param minY the min Y.
+     * @param maxX the max X.
+     * @param maxY the max Y.
+     */
+    public void setBounds(double minX, double minY, double maxX, double maxY) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
     }
 
     /**
      * Return if the current BoundingBox intersects with another.
+     * Boxes that only touch on an edge do not intersect, and an empty box (zero width or height) intersects nothing,
+     * the same as Rectangle2D#intersects.
      *
      * @param box The other BoundingBox to check against.
      * @return True if the passed in BoundingBox intersects with this one,
      * otherwise false.
      */
+    public boolean intersects(BoundingBox2D box) {
+        return minX < maxX && minY < maxY && box.minX < box.maxX && box.minY < box.maxY
+                && minX < box.maxX && box.minX < maxX && minY < box.maxY && box.minY < maxY;
+    }
+
+    /**
+     * @param x      the origin X of the region.
+     * @param y      the origin Y of the region.
+     * @param width  the width of the region.
+     * @param height the height of the region.
+     * @return true if the region intersects with this BoundingBox, false if either is empty.
+     */
+    public boolean intersects(double x, double y, double width, double height) {
+        return minX < maxX && minY < maxY && width > 0 && height > 0
+                && minX < x + width && x < maxX && minY < y + height && y < maxY;
+    }
+
+    /**
+     * @deprecated use {@link #intersects(BoundingBox2D)}.
+     */
+    @Deprecated
     public boolean doesIntersect(BoundingBox2D box) {
-        return rect2D.intersects(box.getRect2D());
+        return intersects(box);
     }
 
     /**
@@ -66,46 +112,132 @@ public class BoundingBox2D {
      * @return true if the passed coordinates are within the bounds.
      */
     public boolean contains(double x, double y) {
-        return rect2D.contains(x, y);
+        return x >= minX && y >= minY && x < maxX && y < maxY;
+    }
+
+    /**
+     * @param box the other BoundingBox.
+     * @return true if the other BoundingBox is completely within this one.
+     */
+    public boolean contains(BoundingBox2D box) {
+        return box.minX >= minX && box.minY >= minY && box.maxX <= maxX && box.maxY <= maxY;
+    }
+
+    /**
+     * Grow this BoundingBox to also cover another.
+     *
+     * @param box the other BoundingBox.
+     * @return this BoundingBox.
+     */
+    public BoundingBox2D union(BoundingBox2D box) {
+        minX = Math.min(minX, box.minX);
+        minY = Math.min(minY, box.minY);
+        maxX = Math.max(maxX, box.maxX);
+        maxY = Math.max(maxY, box.maxY);
+        return this;
+    }
+
+    /**
+     * @param box the other BoundingBox.
+     * @return how far this BoundingBox has to move on the X axis to stop intersecting the other,
+     * negative to the left, or 0 if they don't intersect.
+     */
+    public double getOverlapDepthX(BoundingBox2D box) {
+        if (!intersects(box)) {
+            return 0;
+        }
+
+        double left = box.minX - maxX;
+        double right = box.maxX - minX;
+        return -left < right ? left : right;
+    }
+
+    /**
+     * @param box the other BoundingBox.
+     * @return how far this BoundingBox has to move on the Y axis to stop intersecting the other,
+     * negative upwards, or 0 if they don't intersect.
+     */
+    public double getOverlapDepthY(BoundingBox2D box) {
+        if (!intersects(box)) {
+            return 0;
+        }
+
+        double up = box.minY - maxY;
+        double down = box.maxY - minY;
+        return -up < down ? up : down;
+    }
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getMaxX() {
+        return maxX;
+    }
+
+    public double getMaxY() {
+        return maxY;
+    }
+
+    public double getCenterX() {
+        return (minX + maxX) * 0.5;
+    }
+
+    public double getCenterY() {
+        return (minY + maxY) * 0.5;
     }
 
     public double getX() {
-        return x;
+        return minX;
     }
 
     public void setX(double x) {
-        this.x = x;
+        set(x, minY);
     }
 
     public double getY() {
-        return y;
+        return minY;
     }
 
     public void setY(double y) {
-        this.y = y;
+        set(minX, y);
     }
 
     public double getWidth() {
-        return width;
+        return maxX - minX;
     }
 
     public void setWidth(double width) {
-        this.width = width;
+        maxX = minX + width;
     }
 
     public double getHeight() {
-        return height;
+        return maxY - minY;
     }
 
     public void setHeight(double height) {
-        this.height = height;
+        maxY = minY + height;
     }
 
+    /**
+     * @return a new rectangle with the bounds of this BoundingBox.
+     * @deprecated allocates, use the min and max getters instead.
+     */
+    @Deprecated
     public Rectangle2D getRect2D() {
-        return rect2D;
+        return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
     }
 
+    /**
+     * @param rect2D the rectangle to copy the bounds from.
+     * @deprecated use {@link #set(double, double, double, double)}.
+     */
+    @Deprecated
     public void setRect2D(Rectangle2D rect2D) {
-        this.rect2D = rect2D;
+        set(rect2D.getX(), rect2D.getY(), rect2D.getWidth(), rect2D.getHeight());
     }
 }
@@ -0,0 +1,145 @@
+package stellar.core.collision;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A 1-bit mask of the opaque pixels of a texture, packed 64 pixels to a long.
+ * Two masks are tested for overlap by AND-ing their rows with one shifted against the other, 64 pixels at a time.
+ */
+public final class CollisionMask {
+
+    /**
+     * Pixels with at least this alpha are solid.
+     */
+    public static final int DEFAULT_ALPHA_THRESHOLD = 128;
+
+    private final int width, height;
+    private final int wordsPerRow;
+    // row major, bit n of a word is the pixel n to the right of the word's first pixel. Bits past the width are 0.
+    private final long[] bits;
+
+    private CollisionMask(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.bits = new long[wordsPerRow * height];
+    }
+
+    /**
+     * @param image the image.
+     * @return a mask of the pixels with an alpha of at least {@link #DEFAULT_ALPHA_THRESHOLD}.
+     */
+    public static CollisionMask fromImage(BufferedImage image) {
+        return fromImage(image, 0, 0, image.getWidth(), image.getHeight(), DEFAULT_ALPHA_THRESHOLD);
+    }
+
+    /**
+     * Create a mask from a region of an image.
+     *
+     * @param image     the image.
+     * @param x         the origin X of the region.
+     * @param y         the origin Y of the region.
+     * @param width     the width of the region.
+     * @param height    the height of the region.
+     * @param threshold the minimum alpha of a solid pixel.
+     * @return the mask.
+     */
+    public static CollisionMask fromImage(BufferedImage image, int x, int y, int width, int height, int threshold) {
+        CollisionMask mask = new CollisionMask(width, height);
+
+        int[] row = new int[width];
+        for (int py = 0; py < height; py++) {
+            image.getRGB(x, y + py, width, 1, row, 0, width);
+            int offset = py * mask.wordsPerRow;
+            for (int px = 0; px < width; px++) {
+                if (row[px] >>> 24 >= threshold) {
+                    mask.bits[offset + (px >>> 6)] |= 1L << (px & 63);
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @param x the X coordinate.
+     * @param y the Y coordinate.
+     * @return if the pixel is solid, false outside of the mask.
+     */
+    public boolean get(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return false;
+        }
+        return (bits[y * wordsPerRow + (x >>> 6)] & (1L << (x & 63))) != 0;
+    }
+
+    /**
+     * Test if any solid pixel of this mask overlaps a solid pixel of another.
+     *
+     * @param other   the other mask.
+     * @param offsetX the X position of the other mask relative to this one.
+     * @param offsetY the Y position of the other mask relative to this one.
+     * @return true if the masks overlap.
+     */
+    public boolean overlaps(CollisionMask other, int offsetX, int offsetY) {
+        int startX = Math.max(0, offsetX);
+        int endX = Math.min(width, offsetX + other.width);
+        int startY = Math.max(0, offsetY);
+        int endY = Math.min(height, offsetY + other.height);
+        if (startX >= endX || startY >= endY) {
+            return false;
+        }
+
+        int firstWord = startX >>> 6;
+        int lastWord = (endX - 1) >>> 6;
+        for (int y = startY; y < endY; y++) {
+            int row = y * wordsPerRow;
+            int otherRow = (y - offsetY) * other.wordsPerRow;
+            for (int word = firstWord; word <= lastWord; word++) {
+                long bits = this.bits[row + word];
+                // bits outside of either mask are 0, so there is no need to clip the words to the overlap.
+                if (bits != 0 && (bits & other.bitsAt(otherRow, (word << 6) - offsetX)) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param row      the index of the first word of the row.
+     * @param position the pixel to start at, may be negative.
+     * @return the 64 pixels of a row starting at a position.
+     */
+    private long bitsAt(int row, int position) {
+        if (position < 0) {
+            return position <= -64 ? 0 : bits[row] << -position;
+        }
+
+        int word = position >>> 6;
+        int shift = position & 63;
+        if (word >= wordsPerRow) {
+            return 0;
+        }
+
+        long value = bits[row + word] >>> shift;
+        if (shift != 0 && word + 1 < wordsPerRow) {
+            value |= bits[row + word + 1] << (64 - shift);
+        }
+        return value;
+    }
+
+    /**
+     * @return the width.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+}
@@ -0,0 +1,105 @@
+package stellar.core.collision;
+
+import com.sun.istack.internal.Nullable;
+import stellar.core.tile.Tile;
+
+/**
+ * The result of sweeping a bounding box against the solid tiles of a world.
+ * Results are mutable so a single instance can be reused every tick.
+ */
+public final class TileCollision {
+
+    private boolean hit;
+    private double time = 1, normalX, normalY;
+    private double movedX, movedY;
+    private Tile tile;
+
+    /**
+     * Reset to a result without any hit.
+     */
+    public void reset() {
+        hit = false;
+        time = 1;
+        normalX = normalY = 0;
+        movedX = movedY = 0;
+        tile = null;
+    }
+
+    /**
+     * Record a hit. Used by the sweep.
+     *
+     * @param time    the time of impact.
+     * @param normalX the X component of the contact normal.
+     * @param normalY the Y component of the contact normal.
+     * @param tile    the tile that was hit.
+     */
+    public void setHit(double time, double normalX, double normalY, Tile tile) {
+        this.hit = true;
+        this.time = time;
+        this.normalX = normalX;
+        this.normalY = normalY;
+        this.tile = tile;
+    }
+
+    /**
+     * Record how far the box actually moved. Used by the sweep.
+     *
+     * @param movedX the distance moved on the X axis.
+     * @param movedY the distance moved on the Y axis.
+     */
+    public void setMoved(double movedX, double movedY) {
+        this.movedX = movedX;
+        this.movedY = movedY;
+    }
+
+    /**
+     * @return if a solid tile was hit.
+     */
+    public boolean isHit() {
+        return hit;
+    }
+
+    /**
+     * @return the fraction of the motion (0 to 1) completed before the first hit, 1 if nothing was hit.
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * @return the X component of the contact normal, -1, 0 or 1.
+     */
+    public double getNormalX() {
+        return normalX;
+    }
+
+    /**
+     * @return the Y component of the contact normal, -1, 0 or 1.
+     */
+    public double getNormalY() {
+        return normalY;
+    }
+
+    /**
+     * @return the distance actually moved on the X axis, including any sliding.
+     */
+    public double getMovedX() {
+        return movedX;
+    }
+
+    /**
+     * @return the distance actually moved on the Y axis, including any sliding.
+     */
+    public double getMovedY() {
+        return movedY;
+    }
+
+    /**
+     * @return the tile that was hit, or null.
+     */
+    @Nullable
+    public Tile getTile() {
+        return tile;
+    }
+
+}
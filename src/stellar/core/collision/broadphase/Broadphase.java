@@ -0,0 +1,84 @@
+package stellar.core.collision.broadphase;
+
+import stellar.core.entity.Entity;
+
+/**
+ * A spatial structure that finds entities near each other without testing every entity.
+ * <p>
+ * Entities are tracked by their bounding box, implementations are notified of movement through
+ * Entity#updateBoundingBox. Queries write into caller supplied arrays and return how many entities were written,
+ * they stop early once the array is full.
+ */
+public interface Broadphase {
+
+    /**
+     * Receives pairs of entities whose bounding boxes overlap.
+     */
+    interface OverlapCallback {
+        void onOverlap(Entity a, Entity b);
+    }
+
+    /**
+     * Start tracking an entity.
+     *
+     * @param entity the entity.
+     */
+    void add(Entity entity);
+
+    /**
+     * Stop tracking an entity.
+     *
+     * @param entity the entity.
+     */
+    void remove(Entity entity);
+
+    /**
+     * Update an entity after its bounding box changed.
+     *
+     * @param entity the entity.
+     */
+    void update(Entity entity);
+
+    /**
+     * @param x       the origin X of the region.
+     * @param y       the origin Y of the region.
+     * @param width   the width of the region.
+     * @param height  the height of the region.
+     * @param results the array to write entities to.
+     * @return the amount of entities overlapping the region.
+     */
+    int queryRegion(double x, double y, double width, double height, Entity[] results);
+
+    /**
+     * @param x       the X coordinate of the center.
+     * @param y       the Y coordinate of the center.
+     * @param radius  the radius.
+     * @param results the array to write entities to.
+     * @return the amount of entities whose bounding box is within the radius.
+     */
+    int queryRadius(double x, double y, double radius, Entity[] results);
+
+    /**
+     * Find the closest entities to a point, measured to the closest point of their bounding box.
+     *
+     * @param x       the X coordinate.
+     * @param y       the Y coordinate.
+     * @param results the array to write entities to, closest first. Its length is how many entities to find.
+     * @return the amount of entities found.
+     */
+    int queryNearest(double x, double y, Entity[] results);
+
+    /**
+     * Invoke the callback once for every pair of entities whose bounding boxes overlap.
+     * The callback may query this broadphase, but must not add, remove or update entities.
+     *
+     * @param callback the callback.
+     */
+    void forEachOverlap(OverlapCallback callback);
+
+    /**
+     * @return the amount of tracked entities.
+     */
+    int size();
+
+}
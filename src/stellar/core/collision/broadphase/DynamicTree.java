@@ -0,0 +1,608 @@
+package stellar.core.collision.broadphase;
+
+import stellar.core.collision.BoundingBox2D;
+import stellar.core.entity.Entity;
+
+import java.util.Arrays;
+
+/**
+ * A dynamic bounding volume tree broadphase. Every entity is a leaf holding a fattened copy of its bounding box,
+ * internal nodes hold the union of their children and the tree is kept balanced with rotations.
+ * <p>
+ * Unlike {@link SpatialHash} this handles entities of wildly different sizes well. Small movements that stay within
+ * the fattened box cost nothing, only entities that leave it are reinserted.
+ * <p>
+ * Queries may run on several threads at once as long as no entity is added, removed or updated meanwhile, each thread
+ * keeps its own traversal stack. Everything else is not thread safe.
+ */
+public final class DynamicTree implements Broadphase {
+
+    private static final int NULL = -1;
+
+    private final double margin;
+
+    // fattened bounds for every node, the exact bounds for leaves.
+    private double[] minX, minY, maxX, maxY;
+    private double[] tightMinX, tightMinY, tightMaxX, tightMaxY;
+    private int[] parent, child1, child2, height;
+    private Entity[] entities;
+
+    private int root = NULL;
+    private int nodeCount, freeNode = NULL;
+    private int size;
+
+    // scratch space for queries, per thread so queries can run in parallel.
+    private final ThreadLocal<QueryScratch> scratch = ThreadLocal.withInitial(QueryScratch::new);
+
+    /**
+     * @param margin how far each leaf is fattened in every direction.
+     */
+    public DynamicTree(double margin) {
+        this(margin, 256);
+    }
+
+    /**
+     * @param margin   how far each leaf is fattened in every direction.
+     * @param capacity the expected amount of entities.
+     */
+    public DynamicTree(double margin, int capacity) {
+        this.margin = Math.max(0, margin);
+
+        // a tree with n leaves has n - 1 internal nodes.
+        capacity = Math.max(16, capacity * 2);
+        minX = new double[capacity];
+        minY = new double[capacity];
+        maxX = new double[capacity];
+        maxY = new double[capacity];
+        tightMinX = new double[capacity];
+        tightMinY = new double[capacity];
+        tightMaxX = new double[capacity];
+        tightMaxY = new double[capacity];
+        parent = new int[capacity];
+        child1 = new int[capacity];
+        child2 = new int[capacity];
+        height = new int[capacity];
+        entities = new Entity[capacity];
+    }
+
+    @Override
+    public void add(Entity entity) {
+        if (entity.getBroadphaseProxy() != -1) {
+            throw new IllegalStateException("Entity " + entity.getEntityID() + " is already in a broadphase.");
+        }
+
+        int leaf = allocateNode();
+        entities[leaf] = entity;
+        height[leaf] = 0;
+        setLeafBounds(leaf, entity.getBox2D());
+        fatten(leaf);
+        insertLeaf(leaf);
+
+        entity.setBroadphaseProxy(this, leaf);
+        size++;
+    }
+
+    @Override
+    public void remove(Entity entity) {
+        int leaf = entity.getBroadphaseProxy();
+        if (leaf == -1 || entities[leaf] != entity) {
+            return;
+        }
+
+        removeLeaf(leaf);
+        freeNode(leaf);
+        entity.setBroadphaseProxy(null, -1);
+        size--;
+    }
+
+    @Override
+    public void update(Entity entity) {
+        int leaf = entity.getBroadphaseProxy();
+        setLeafBounds(leaf, entity.getBox2D());
+
+        // still inside the fattened box, nothing to do.
+        if (tightMinX[leaf] >= minX[leaf] && tightMinY[leaf] >= minY[leaf] && tightMaxX[leaf] <= maxX[leaf] && tightMaxY[leaf] <= maxY[leaf]) {
+            return;
+        }
+
+        removeLeaf(leaf);
+        fatten(leaf);
+        insertLeaf(leaf);
+    }
+
+    @Override
+    public int queryRegion(double x, double y, double width, double height, Entity[] results) {
+        return collect(x, y, x + width, y + height, 0, 0, -1, results);
+    }
+
+    @Override
+    public int queryRadius(double x, double y, double radius, Entity[] results) {
+        return collect(x - radius, y - radius, x + radius, y + radius, x, y, radius * radius, results);
+    }
+
+    /**
+     * Collect leaves overlapping a region, optionally only those within a radius of a point.
+     */
+    private int collect(double queryMinX, double queryMinY, double queryMaxX, double queryMaxY, double px, double py, double radiusSquared,
+                        Entity[] results) {
+        if (root == NULL || results.length == 0) {
+            return 0;
+        }
+
+        int count = 0;
+        QueryScratch scratch = this.scratch.get();
+        int top = 0;
+        scratch.stack[top++] = root;
+        while (top > 0) {
+            int node = scratch.stack[--top];
+            if (minX[node] > queryMaxX || maxX[node] < queryMinX || minY[node] > queryMaxY || maxY[node] < queryMinY) {
+                continue;
+            }
+
+            if (child1[node] != NULL) {
+                top = push(scratch, top, child1[node], child2[node]);
+                continue;
+            }
+
+            if (tightMinX[node] > queryMaxX || tightMaxX[node] < queryMinX || tightMinY[node] > queryMaxY || tightMaxY[node] < queryMinY) {
+                continue;
+            }
+
+            if (radiusSquared < 0 || distanceSquared(node, px, py) <= radiusSquared) {
+                results[count++] = entities[node];
+                if (count == results.length) {
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int queryNearest(double x, double y, Entity[] results) {
+        int k = results.length;
+        if (root == NULL || k == 0) {
+            return 0;
+        }
+
+        QueryScratch scratch = this.scratch.get();
+        if (scratch.distances.length < k) {
+            scratch.distances = new double[k];
+        }
+        double[] nearestDistances = scratch.distances;
+
+        int found = 0;
+        int top = 0;
+        scratch.stack[top++] = root;
+        while (top > 0) {
+            int node = scratch.stack[--top];
+            // prune nodes further away than the worst result we would keep.
+            if (found == k && fatDistanceSquared(node, x, y) >= nearestDistances[k - 1]) {
+                continue;
+            }
+
+            if (child1[node] != NULL) {
+                // visit the closer child first, it is popped first.
+                int a = child1[node], b = child2[node];
+                if (fatDistanceSquared(a, x, y) < fatDistanceSquared(b, x, y)) {
+                    top = push(scratch, top, b, a);
+                } else {
+                    top = push(scratch, top, a, b);
+                }
+                continue;
+            }
+
+            double distance = distanceSquared(node, x, y);
+            if (found == k && distance >= nearestDistances[k - 1]) {
+                continue;
+            }
+
+            int index = found == k ? k - 1 : found++;
+            while (index > 0 && nearestDistances[index - 1] > distance) {
+                nearestDistances[index] = nearestDistances[index - 1];
+                results[index] = results[index - 1];
+                index--;
+            }
+            nearestDistances[index] = distance;
+            results[index] = entities[node];
+        }
+        return found;
+    }
+
+    /**
+     * Cast a ray and find the first entity it hits.
+     *
+     * @param startX the X coordinate the ray starts at.
+     * @param startY the Y coordinate the ray starts at.
+     * @param endX   the X coordinate the ray ends at.
+     * @param endY   the Y coordinate the ray ends at.
+     * @param hit    an array of at least one element, the entity that was hit is written to index 0.
+     * @return the fraction of the ray (0 to 1) where the entity was hit, or -1 if nothing was hit.
+     */
+    public double raycast(double startX, double startY, double endX, double endY, Entity[] hit) {
+        if (root == NULL) {
+            return -1;
+        }
+
+        double dx = endX - startX, dy = endY - startY;
+        double inverseX = 1.0 / dx, inverseY = 1.0 / dy;
+        double best = 1.0;
+        Entity closest = null;
+
+        QueryScratch scratch = this.scratch.get();
+        int top = 0;
+        scratch.stack[top++] = root;
+        while (top > 0) {
+            int node = scratch.stack[--top];
+            boolean leaf = child1[node] == NULL;
+            double t = leaf
+                    ? slab(startX, startY, inverseX, inverseY, tightMinX[node], tightMinY[node], tightMaxX[node], tightMaxY[node], best)
+                    : slab(startX, startY, inverseX, inverseY, minX[node], minY[node], maxX[node], maxY[node], best);
+            if (t < 0) {
+                continue;
+            }
+
+            if (leaf) {
+                // shorten the ray so further away nodes are skipped.
+                best = t;
+                closest = entities[node];
+            } else {
+                top = push(scratch, top, child1[node], child2[node]);
+            }
+        }
+
+        if (closest == null) {
+            return -1;
+        }
+        hit[0] = closest;
+        return best;
+    }
+
+    /**
+     * @return the fraction where the ray enters the box, or -1 if it misses the box before maxFraction.
+     */
+    private static double slab(double x, double y, double inverseX, double inverseY, double boxMinX, double boxMinY, double boxMaxX,
+                               double boxMaxY, double maxFraction) {
+        double t1 = (boxMinX - x) * inverseX, t2 = (boxMaxX - x) * inverseX;
+        double t3 = (boxMinY - y) * inverseY, t4 = (boxMaxY - y) * inverseY;
+
+        // a ray parallel to an axis produces NaN when it starts on the slab edge, treat it as inside.
+        double near = Math.max(Math.max(Double.isNaN(t1) ? 0 : Math.min(t1, t2), Double.isNaN(t3) ? 0 : Math.min(t3, t4)), 0);
+        double far = Math.min(Double.isNaN(t1) ? Double.POSITIVE_INFINITY : Math.max(t1, t2),
+                Double.isNaN(t3) ? Double.POSITIVE_INFINITY : Math.max(t3, t4));
+        return near <= far && near <= maxFraction ? near : -1;
+    }
+
+    @Override
+    public void forEachOverlap(OverlapCallback callback) {
+        // not the thread's query stack, the callback may query this tree while the traversal is halfway.
+        QueryScratch scratch = new QueryScratch();
+        for (int leaf = 0; leaf < nodeCount; leaf++) {
+            if (entities[leaf] == null) {
+                continue;
+            }
+
+            int top = 0;
+            scratch.stack[top++] = root;
+            while (top > 0) {
+                int node = scratch.stack[--top];
+                if (minX[node] >= tightMaxX[leaf] || maxX[node] <= tightMinX[leaf] || minY[node] >= tightMaxY[leaf] || maxY[node] <= tightMinY[leaf]) {
+                    continue;
+                }
+
+                if (child1[node] != NULL) {
+                    top = push(scratch, top, child1[node], child2[node]);
+                    continue;
+                }
+
+                // every pair is found from both leaves, only report it from the lower one.
+                if (node > leaf && tightMinX[node] < tightMaxX[leaf] && tightMinX[leaf] < tightMaxX[node]
+                        && tightMinY[node] < tightMaxY[leaf] && tightMinY[leaf] < tightMaxY[node]) {
+                    callback.onOverlap(entities[leaf], entities[node]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the height of the tree, 0 when empty or a single leaf.
+     */
+    public int getHeight() {
+        return root == NULL ? 0 : height[root];
+    }
+
+    /**
+     * @return how far each leaf is fattened in every direction.
+     */
+    public double getMargin() {
+        return margin;
+    }
+
+    private void setLeafBounds(int leaf, BoundingBox2D box) {
+        tightMinX[leaf] = box.getMinX();
+        tightMinY[leaf] = box.getMinY();
+        tightMaxX[leaf] = box.getMaxX();
+        tightMaxY[leaf] = box.getMaxY();
+    }
+
+    private void fatten(int leaf) {
+        minX[leaf] = tightMinX[leaf] - margin;
+        minY[leaf] = tightMinY[leaf] - margin;
+        maxX[leaf] = tightMaxX[leaf] + margin;
+        maxY[leaf] = tightMaxY[leaf] + margin;
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL) {
+            root = leaf;
+            parent[leaf] = NULL;
+            return;
+        }
+
+        // find the best sibling by walking down the cheapest path, cost is the perimeter of the bounds.
+        int index = root;
+        while (child1[index] != NULL) {
+            int c1 = child1[index], c2 = child2[index];
+
+            double area = perimeter(minX[index], minY[index], maxX[index], maxY[index]);
+            double combined = perimeter(Math.min(minX[index], minX[leaf]), Math.min(minY[index], minY[leaf]),
+                    Math.max(maxX[index], maxX[leaf]), Math.max(maxY[index], maxY[leaf]));
+
+            // the cost of creating a new parent for this node and the leaf.
+            double cost = 2 * combined;
+            // the minimum cost of pushing the leaf further down the tree.
+            double inheritance = 2 * (combined - area);
+
+            double cost1 = descendCost(c1, leaf) + inheritance;
+            double cost2 = descendCost(c2, leaf) + inheritance;
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? c1 : c2;
+        }
+
+        int sibling = index;
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        entities[newParent] = null;
+        height[newParent] = height[sibling] + 1;
+        union(newParent, sibling, leaf);
+
+        if (oldParent != NULL) {
+            if (child1[oldParent] == sibling) {
+                child1[oldParent] = newParent;
+            } else {
+                child2[oldParent] = newParent;
+            }
+        } else {
+            root = newParent;
+        }
+
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        refit(parent[leaf]);
+    }
+
+    private double descendCost(int child, int leaf) {
+        double combined = perimeter(Math.min(minX[child], minX[leaf]), Math.min(minY[child], minY[leaf]),
+                Math.max(maxX[child], maxX[leaf]), Math.max(maxY[child], maxY[leaf]));
+        if (child1[child] == NULL) {
+            return combined;
+        }
+        return combined - perimeter(minX[child], minY[child], maxX[child], maxY[child]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL;
+            return;
+        }
+
+        int parentNode = parent[leaf];
+        int grandParent = parent[parentNode];
+        int sibling = child1[parentNode] == leaf ? child2[parentNode] : child1[parentNode];
+
+        if (grandParent != NULL) {
+            if (child1[grandParent] == parentNode) {
+                child1[grandParent] = sibling;
+            } else {
+                child2[grandParent] = sibling;
+            }
+            parent[sibling] = grandParent;
+            freeNode(parentNode);
+            refit(grandParent);
+        } else {
+            root = sibling;
+            parent[sibling] = NULL;
+            freeNode(parentNode);
+        }
+    }
+
+    /**
+     * Walk up from a node, balancing and recomputing bounds and heights.
+     */
+    private void refit(int index) {
+        while (index != NULL) {
+            index = balance(index);
+
+            int c1 = child1[index], c2 = child2[index];
+            height[index] = 1 + Math.max(height[c1], height[c2]);
+            union(index, c1, c2);
+            index = parent[index];
+        }
+    }
+
+    /**
+     * Rotate the tree at a node if its children differ in height by more than one.
+     *
+     * @return the node now in the position of the given node.
+     */
+    private int balance(int a) {
+        if (child1[a] == NULL || height[a] < 2) {
+            return a;
+        }
+
+        int b = child1[a], c = child2[a];
+        int difference = height[c] - height[b];
+
+        if (difference > 1) {
+            // rotate c up.
+            int f = child1[c], g = child2[c];
+            child1[c] = a;
+            parent[c] = parent[a];
+            parent[a] = c;
+            replaceChild(parent[c], a, c);
+
+            if (height[f] > height[g]) {
+                child2[c] = f;
+                child2[a] = g;
+                parent[g] = a;
+                union(a, b, g);
+                union(c, a, f);
+                height[a] = 1 + Math.max(height[b], height[g]);
+                height[c] = 1 + Math.max(height[a], height[f]);
+            } else {
+                child2[c] = g;
+                child2[a] = f;
+                parent[f] = a;
+                union(a, b, f);
+                union(c, a, g);
+                height[a] = 1 + Math.max(height[b], height[f]);
+                height[c] = 1 + Math.max(height[a], height[g]);
+            }
+            return c;
+        }
+
+        if (difference < -1) {
+            // rotate b up.
+            int d = child1[b], e = child2[b];
+            child1[b] = a;
+            parent[b] = parent[a];
+            parent[a] = b;
+            replaceChild(parent[b], a, b);
+
+            if (height[d] > height[e]) {
+                child2[b] = d;
+                child1[a] = e;
+                parent[e] = a;
+                union(a, c, e);
+                union(b, a, d);
+                height[a] = 1 + Math.max(height[c], height[e]);
+                height[b] = 1 + Math.max(height[a], height[d]);
+            } else {
+                child2[b] = e;
+                child1[a] = d;
+                parent[d] = a;
+                union(a, c, d);
+                union(b, a, e);
+                height[a] = 1 + Math.max(height[c], height[d]);
+                height[b] = 1 + Math.max(height[a], height[e]);
+            }
+            return b;
+        }
+        return a;
+    }
+
+    private void replaceChild(int parentNode, int oldChild, int newChild) {
+        if (parentNode == NULL) {
+            root = newChild;
+        } else if (child1[parentNode] == oldChild) {
+            child1[parentNode] = newChild;
+        } else {
+            child2[parentNode] = newChild;
+        }
+    }
+
+    private void union(int target, int a, int b) {
+        minX[target] = Math.min(minX[a], minX[b]);
+        minY[target] = Math.min(minY[a], minY[b]);
+        maxX[target] = Math.max(maxX[a], maxX[b]);
+        maxY[target] = Math.max(maxY[a], maxY[b]);
+    }
+
+    private static double perimeter(double minX, double minY, double maxX, double maxY) {
+        return 2 * ((maxX - minX) + (maxY - minY));
+    }
+
+    private double distanceSquared(int leaf, double x, double y) {
+        double dx = Math.max(0, Math.max(tightMinX[leaf] - x, x - tightMaxX[leaf]));
+        double dy = Math.max(0, Math.max(tightMinY[leaf] - y, y - tightMaxY[leaf]));
+        return dx * dx + dy * dy;
+    }
+
+    private double fatDistanceSquared(int node, double x, double y) {
+        double dx = Math.max(0, Math.max(minX[node] - x, x - maxX[node]));
+        double dy = Math.max(0, Math.max(minY[node] - y, y - maxY[node]));
+        return dx * dx + dy * dy;
+    }
+
+    private static int push(QueryScratch scratch, int top, int a, int b) {
+        if (top + 2 > scratch.stack.length) {
+            scratch.stack = Arrays.copyOf(scratch.stack, scratch.stack.length << 1);
+        }
+        scratch.stack[top++] = a;
+        scratch.stack[top++] = b;
+        return top;
+    }
+
+    private int allocateNode() {
+        int node;
+        if (freeNode != NULL) {
+            node = freeNode;
+            freeNode = parent[node];
+        } else {
+            if (nodeCount == parent.length) {
+                grow();
+            }
+            node = nodeCount++;
+        }
+
+        parent[node] = NULL;
+        child1[node] = NULL;
+        child2[node] = NULL;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        entities[node] = null;
+        child1[node] = NULL;
+        child2[node] = NULL;
+        parent[node] = freeNode;
+        freeNode = node;
+    }
+
+    private void grow() {
+        int capacity = parent.length << 1;
+        minX = Arrays.copyOf(minX, capacity);
+        minY = Arrays.copyOf(minY, capacity);
+        maxX = Arrays.copyOf(maxX, capacity);
+        maxY = Arrays.copyOf(maxY, capacity);
+        tightMinX = Arrays.copyOf(tightMinX, capacity);
+        tightMinY = Arrays.copyOf(tightMinY, capacity);
+        tightMaxX = Arrays.copyOf(tightMaxX, capacity);
+        tightMaxY = Arrays.copyOf(tightMaxY, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        child1 = Arrays.copyOf(child1, capacity);
+        child2 = Arrays.copyOf(child2, capacity);
+        height = Arrays.copyOf(height, capacity);
+        entities = Arrays.copyOf(entities, capacity);
+    }
+
+    /**
+     * The traversal state of one thread.
+     */
+    private static final class QueryScratch {
+        private int[] stack = new int[64];
+        private double[] distances = new double[16];
+    }
+
+}
@@ -0,0 +1,506 @@
+package stellar.core.collision.broadphase;
+
+import stellar.core.collision.BoundingBox2D;
+import stellar.core.entity.Entity;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid broadphase. The world is split into square cells of a fixed size and every entity is linked into each
+ * cell its bounding box touches. Cells are hashed into a bucket table, so the grid is unbounded and empty cells cost nothing.
+ * <p>
+ * Works best when most entities are no larger than a cell. Region and radius queries include entities that only touch
+ * the query bounds, overlap pairs require the boxes to actually intersect, the same as BoundingBox2D#intersects.
+ * <p>
+ * Queries may run on several threads at once as long as no entity is added, removed or updated meanwhile, each thread
+ * keeps its own query scratch space. Everything else is not thread safe.
+ */
+public final class SpatialHash implements Broadphase {
+
+    private final double cellSize, inverseCellSize;
+
+    // proxies, one per entity.
+    private Entity[] entities;
+    private double[] minX, minY, maxX, maxY;
+    private int[] cellMinX, cellMinY, cellMaxX, cellMaxY;
+    private int[] firstNode;
+    private int[] freeProxies;
+    private int proxyCount, freeProxyCount, size;
+
+    // nodes link a proxy into one cell. Free nodes are chained through nodeNext.
+    private int[] nodeProxy, nodeCellX, nodeCellY, nodeNext, nodePrev, nodeBucket, nodeProxyNext;
+    private int nodeCount, freeNode = -1, liveNodes;
+
+    private int[] buckets;
+    private int bucketMask;
+
+    // scratch space for queries, per thread so queries can run in parallel.
+    private final ThreadLocal<QueryScratch> scratch = ThreadLocal.withInitial(QueryScratch::new);
+
+    /**
+     * @param cellSize the size of each cell, ideally about the size of a typical entity.
+     */
+    public SpatialHash(double cellSize) {
+        this(cellSize, 1024);
+    }
+
+    /**
+     * @param cellSize the size of each cell, ideally about the size of a typical entity.
+     * @param capacity the expected amount of entities.
+     */
+    public SpatialHash(double cellSize, int capacity) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+
+        this.cellSize = cellSize;
+        this.inverseCellSize = 1.0 / cellSize;
+
+        capacity = Math.max(16, capacity);
+        entities = new Entity[capacity];
+        minX = new double[capacity];
+        minY = new double[capacity];
+        maxX = new double[capacity];
+        maxY = new double[capacity];
+        cellMinX = new int[capacity];
+        cellMinY = new int[capacity];
+        cellMaxX = new int[capacity];
+        cellMaxY = new int[capacity];
+        firstNode = new int[capacity];
+        freeProxies = new int[capacity];
+
+        nodeProxy = new int[capacity];
+        nodeCellX = new int[capacity];
+        nodeCellY = new int[capacity];
+        nodeNext = new int[capacity];
+        nodePrev = new int[capacity];
+        nodeBucket = new int[capacity];
+        nodeProxyNext = new int[capacity];
+
+        buckets = new int[Integer.highestOneBit(capacity - 1) << 1];
+        Arrays.fill(buckets, -1);
+        bucketMask = buckets.length - 1;
+    }
+
+    @Override
+    public void add(Entity entity) {
+        if (entity.getBroadphaseProxy() != -1) {
+            throw new IllegalStateException("Entity " + entity.getEntityID() + " is already in a broadphase.");
+        }
+
+        int proxy;
+        if (freeProxyCount > 0) {
+            proxy = freeProxies[--freeProxyCount];
+        } else {
+            if (proxyCount == entities.length) {
+                growProxies();
+            }
+            proxy = proxyCount++;
+        }
+
+        entities[proxy] = entity;
+        firstNode[proxy] = -1;
+        entity.setBroadphaseProxy(this, proxy);
+        size++;
+
+        setBounds(proxy, entity.getBox2D());
+        insertNodes(proxy);
+    }
+
+    @Override
+    public void remove(Entity entity) {
+        int proxy = entity.getBroadphaseProxy();
+        if (proxy == -1 || entities[proxy] != entity) {
+            return;
+        }
+
+        removeNodes(proxy);
+        entities[proxy] = null;
+        freeProxies[freeProxyCount++] = proxy;
+        entity.setBroadphaseProxy(null, -1);
+        size--;
+    }
+
+    @Override
+    public void update(Entity entity) {
+        int proxy = entity.getBroadphaseProxy();
+        int oldMinX = cellMinX[proxy], oldMinY = cellMinY[proxy], oldMaxX = cellMaxX[proxy], oldMaxY = cellMaxY[proxy];
+        setBounds(proxy, entity.getBox2D());
+
+        // most movement stays within the same cells.
+        if (oldMinX != cellMinX[proxy] || oldMinY != cellMinY[proxy] || oldMaxX != cellMaxX[proxy] || oldMaxY != cellMaxY[proxy]) {
+            removeNodes(proxy);
+            insertNodes(proxy);
+        }
+    }
+
+    @Override
+    public int queryRegion(double x, double y, double width, double height, Entity[] results) {
+        return collect(x, y, x + width, y + height, 0, 0, -1, results);
+    }
+
+    @Override
+    public int queryRadius(double x, double y, double radius, Entity[] results) {
+        return collect(x - radius, y - radius, x + radius, y + radius, x, y, radius * radius, results);
+    }
+
+    /**
+     * Collect entities overlapping a region, optionally only those within a radius of a point.
+     */
+    private int collect(double queryMinX, double queryMinY, double queryMaxX, double queryMaxY, double px, double py, double radiusSquared,
+                        Entity[] results) {
+        if (results.length == 0 || size == 0) {
+            return 0;
+        }
+
+        QueryScratch scratch = this.scratch.get();
+        int[] stamps = scratch.stamps(proxyCount);
+        int stamp = scratch.nextStamp();
+        int count = 0;
+        int cx0 = cell(queryMinX), cy0 = cell(queryMinY), cx1 = cell(queryMaxX), cy1 = cell(queryMaxY);
+
+        // a huge query touches more cells than there are entities, scanning the entities is cheaper.
+        if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > size) {
+            for (int proxy = 0; proxy < proxyCount; proxy++) {
+                if (entities[proxy] != null && accepts(proxy, queryMinX, queryMinY, queryMaxX, queryMaxY, px, py, radiusSquared)) {
+                    results[count++] = entities[proxy];
+                    if (count == results.length) {
+                        break;
+                    }
+                }
+            }
+            return count;
+        }
+
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                for (int node = buckets[hash(cx, cy)]; node != -1; node = nodeNext[node]) {
+                    if (nodeCellX[node] != cx || nodeCellY[node] != cy) {
+                        continue;
+                    }
+
+                    int proxy = nodeProxy[node];
+                    if (stamps[proxy] == stamp) {
+                        continue;
+                    }
+                    stamps[proxy] = stamp;
+
+                    if (accepts(proxy, queryMinX, queryMinY, queryMaxX, queryMaxY, px, py, radiusSquared)) {
+                        results[count++] = entities[proxy];
+                        if (count == results.length) {
+                            return count;
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private boolean accepts(int proxy, double queryMinX, double queryMinY, double queryMaxX, double queryMaxY, double px, double py,
+                            double radiusSquared) {
+        if (minX[proxy] > queryMaxX || maxX[proxy] < queryMinX || minY[proxy] > queryMaxY || maxY[proxy] < queryMinY) {
+            return false;
+        }
+        return radiusSquared < 0 || distanceSquared(proxy, px, py) <= radiusSquared;
+    }
+
+    @Override
+    public int queryNearest(double x, double y, Entity[] results) {
+        int k = results.length;
+        if (k == 0 || size == 0) {
+            return 0;
+        }
+
+        QueryScratch scratch = this.scratch.get();
+        int[] stamps = scratch.stamps(proxyCount);
+        double[] nearestDistances = scratch.distances(k);
+        int stamp = scratch.nextStamp();
+        int found = 0, seen = 0;
+        int centerX = cell(x), centerY = cell(y);
+
+        for (int ring = 0; ; ring++) {
+            long side = 2L * ring + 1;
+            if (side * side > 4L * size + 16) {
+                // the remaining entities are sparse and far away, check them directly.
+                for (int proxy = 0; proxy < proxyCount; proxy++) {
+                    if (entities[proxy] != null && stamps[proxy] != stamp) {
+                        found = offerNearest(proxy, distanceSquared(proxy, x, y), results, nearestDistances, found);
+                    }
+                }
+                break;
+            }
+
+            // walk the square ring of cells at this distance from the center cell.
+            for (int cx = centerX - ring; cx <= centerX + ring; cx++) {
+                for (int cy = centerY - ring; cy <= centerY + ring; cy++) {
+                    if (ring != 0 && cx != centerX - ring && cx != centerX + ring && cy != centerY - ring) {
+                        // inside the ring, jump straight to the bottom row.
+                        cy = centerY + ring;
+                    }
+
+                    for (int node = buckets[hash(cx, cy)]; node != -1; node = nodeNext[node]) {
+                        if (nodeCellX[node] != cx || nodeCellY[node] != cy) {
+                            continue;
+                        }
+
+                        int proxy = nodeProxy[node];
+                        if (stamps[proxy] == stamp) {
+                            continue;
+                        }
+                        stamps[proxy] = stamp;
+                        seen++;
+                        found = offerNearest(proxy, distanceSquared(proxy, x, y), results, nearestDistances, found);
+                    }
+                }
+            }
+
+            // anything not seen yet is at least ring * cellSize away.
+            double reach = ring * cellSize;
+            if ((found == k && nearestDistances[k - 1] <= reach * reach) || seen == size) {
+                break;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Insert a candidate into the sorted nearest results.
+     *
+     * @return the new amount of results.
+     */
+    private int offerNearest(int proxy, double distance, Entity[] results, double[] nearestDistances, int found) {
+        int k = results.length;
+        if (found == k && distance >= nearestDistances[k - 1]) {
+            return found;
+        }
+
+        int index = found == k ? k - 1 : found++;
+        while (index > 0 && nearestDistances[index - 1] > distance) {
+            nearestDistances[index] = nearestDistances[index - 1];
+            results[index] = results[index - 1];
+            index--;
+        }
+        nearestDistances[index] = distance;
+        results[index] = entities[proxy];
+        return found;
+    }
+
+    @Override
+    public void forEachOverlap(OverlapCallback callback) {
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            for (int first = buckets[bucket]; first != -1; first = nodeNext[first]) {
+                int cx = nodeCellX[first], cy = nodeCellY[first];
+                int a = nodeProxy[first];
+
+                for (int second = nodeNext[first]; second != -1; second = nodeNext[second]) {
+                    if (nodeCellX[second] != cx || nodeCellY[second] != cy) {
+                        continue;
+                    }
+
+                    int b = nodeProxy[second];
+                    if (minX[a] >= maxX[b] || minX[b] >= maxX[a] || minY[a] >= maxY[b] || minY[b] >= maxY[a]) {
+                        continue;
+                    }
+
+                    // a pair that shares several cells is only reported from the cell holding the corner of their overlap.
+                    if (cell(Math.max(minX[a], minX[b])) == cx && cell(Math.max(minY[a], minY[b])) == cy) {
+                        callback.onOverlap(entities[a], entities[b]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the size of each cell.
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    private void setBounds(int proxy, BoundingBox2D box) {
+        minX[proxy] = box.getMinX();
+        minY[proxy] = box.getMinY();
+        maxX[proxy] = box.getMaxX();
+        maxY[proxy] = box.getMaxY();
+        cellMinX[proxy] = cell(minX[proxy]);
+        cellMinY[proxy] = cell(minY[proxy]);
+        cellMaxX[proxy] = cell(maxX[proxy]);
+        cellMaxY[proxy] = cell(maxY[proxy]);
+    }
+
+    private void insertNodes(int proxy) {
+        for (int cy = cellMinY[proxy]; cy <= cellMaxY[proxy]; cy++) {
+            for (int cx = cellMinX[proxy]; cx <= cellMaxX[proxy]; cx++) {
+                int node = allocateNode();
+                int bucket = hash(cx, cy);
+
+                nodeProxy[node] = proxy;
+                nodeCellX[node] = cx;
+                nodeCellY[node] = cy;
+                nodeBucket[node] = bucket;
+
+                linkBucket(node, bucket);
+                nodeProxyNext[node] = firstNode[proxy];
+                firstNode[proxy] = node;
+            }
+        }
+    }
+
+    private void removeNodes(int proxy) {
+        int node = firstNode[proxy];
+        while (node != -1) {
+            int next = nodeProxyNext[node];
+            unlinkBucket(node);
+
+            nodeNext[node] = freeNode;
+            freeNode = node;
+            liveNodes--;
+            node = next;
+        }
+        firstNode[proxy] = -1;
+    }
+
+    private void linkBucket(int node, int bucket) {
+        int head = buckets[bucket];
+        nodePrev[node] = -1;
+        nodeNext[node] = head;
+        if (head != -1) {
+            nodePrev[head] = node;
+        }
+        buckets[bucket] = node;
+    }
+
+    private void unlinkBucket(int node) {
+        int prev = nodePrev[node], next = nodeNext[node];
+        if (prev == -1) {
+            buckets[nodeBucket[node]] = next;
+        } else {
+            nodeNext[prev] = next;
+        }
+
+        if (next != -1) {
+            nodePrev[next] = prev;
+        }
+    }
+
+    private int allocateNode() {
+        int node;
+        if (freeNode != -1) {
+            node = freeNode;
+            freeNode = nodeNext[node];
+        } else {
+            if (nodeCount == nodeProxy.length) {
+                growNodes();
+            }
+            node = nodeCount++;
+        }
+
+        if (++liveNodes > buckets.length << 1) {
+            rehash();
+        }
+        return node;
+    }
+
+    /**
+     * Double the bucket table and relink every live node.
+     */
+    private void rehash() {
+        buckets = new int[buckets.length << 1];
+        Arrays.fill(buckets, -1);
+        bucketMask = buckets.length - 1;
+
+        for (int proxy = 0; proxy < proxyCount; proxy++) {
+            if (entities[proxy] == null) {
+                continue;
+            }
+
+            for (int node = firstNode[proxy]; node != -1; node = nodeProxyNext[node]) {
+                int bucket = hash(nodeCellX[node], nodeCellY[node]);
+                nodeBucket[node] = bucket;
+                linkBucket(node, bucket);
+            }
+        }
+    }
+
+    private int cell(double value) {
+        return (int) Math.floor(value * inverseCellSize);
+    }
+
+    private int hash(int cx, int cy) {
+        int hash = cx * 0x9E3779B1 ^ cy * 0x85EBCA77;
+        return (hash ^ (hash >>> 15)) & bucketMask;
+    }
+
+    private double distanceSquared(int proxy, double x, double y) {
+        double dx = Math.max(0, Math.max(minX[proxy] - x, x - maxX[proxy]));
+        double dy = Math.max(0, Math.max(minY[proxy] - y, y - maxY[proxy]));
+        return dx * dx + dy * dy;
+    }
+
+    private void growProxies() {
+        int capacity = entities.length << 1;
+        entities = Arrays.copyOf(entities, capacity);
+        minX = Arrays.copyOf(minX, capacity);
+        minY = Arrays.copyOf(minY, capacity);
+        maxX = Arrays.copyOf(maxX, capacity);
+        maxY = Arrays.copyOf(maxY, capacity);
+        cellMinX = Arrays.copyOf(cellMinX, capacity);
+        cellMinY = Arrays.copyOf(cellMinY, capacity);
+        cellMaxX = Arrays.copyOf(cellMaxX, capacity);
+        cellMaxY = Arrays.copyOf(cellMaxY, capacity);
+        firstNode = Arrays.copyOf(firstNode, capacity);
+        freeProxies = Arrays.copyOf(freeProxies, capacity);
+    }
+
+    private void growNodes() {
+        int capacity = nodeProxy.length << 1;
+        nodeProxy = Arrays.copyOf(nodeProxy, capacity);
+        nodeCellX = Arrays.copyOf(nodeCellX, capacity);
+        nodeCellY = Arrays.copyOf(nodeCellY, capacity);
+        nodeNext = Arrays.copyOf(nodeNext, capacity);
+        nodePrev = Arrays.copyOf(nodePrev, capacity);
+        nodeBucket = Arrays.copyOf(nodeBucket, capacity);
+        nodeProxyNext = Arrays.copyOf(nodeProxyNext, capacity);
+    }
+
+    /**
+     * The query state of one thread. Proxies are stamped with the number of the query that saw them last, stamps only
+     * grow so a reused proxy never carries a stamp of the current query.
+     */
+    private static final class QueryScratch {
+        private int[] stamps = new int[0];
+        private int stamp;
+        private double[] distances = new double[16];
+
+        private int[] stamps(int proxies) {
+            if (stamps.length < proxies) {
+                stamps = Arrays.copyOf(stamps, Math.max(proxies, stamps.length << 1));
+            }
+            return stamps;
+        }
+
+        private int nextStamp() {
+            if (++stamp == 0) {
+                // wrapped around, forget every old stamp.
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+
+        private double[] distances(int k) {
+            if (distances.length < k) {
+                distances = new double[k];
+            }
+            return distances;
+        }
+    }
+
+}
@@ -0,0 +1,590 @@
+package stellar.core.collision.broadphase;
+
+import com.sun.istack.internal.Nullable;
+import stellar.core.collision.BoundingBox2D;
+import stellar.core.entity.Entity;
+
+import java.util.Arrays;
+
+/**
+ * An incremental sort and sweep broadphase. The min and max of every bounding box are kept sorted on both axes,
+ * moving an entity only swaps its endpoints past the neighbours it actually crossed. Because of that the set of
+ * overlapping pairs is maintained persistently and changes to it are reported as begin and end events.
+ * <p>
+ * Works best when entities move a little every tick. Region queries scan one axis and nearest queries are linear,
+ * prefer {@link SpatialHash} or {@link DynamicTree} when those dominate.
+ * <p>
+ * Queries may run on several threads at once as long as no entity is added, removed or updated meanwhile.
+ * Everything else is not thread safe.
+ */
+public final class SweepAndPrune implements Broadphase {
+
+    /**
+     * Receives changes to the set of overlapping pairs.
+     */
+    public interface OverlapListener {
+
+        /**
+         * Two entities started overlapping.
+         */
+        void onOverlapBegin(Entity a, Entity b);
+
+        /**
+         * Two entities stopped overlapping, or one of them was removed.
+         */
+        void onOverlapEnd(Entity a, Entity b);
+    }
+
+    private static final long EMPTY = -1L;
+
+    // per proxy bounds and the position of each of its endpoints.
+    private double[] minX, minY, maxX, maxY;
+    private int[] minIndexX, maxIndexX, minIndexY, maxIndexY;
+    private Entity[] entities;
+    private int[] freeProxies;
+    private int freeCount, proxyCount;
+    private int size;
+
+    // endpoints sorted on each axis, the data is (proxy << 1) | 1 for a max endpoint.
+    private double[] valuesX, valuesY;
+    private int[] endpointsX, endpointsY;
+    private int endpointCount;
+
+    // overlapping pairs, keyed by (lower proxy << 32) | higher proxy.
+    private long[] pairs;
+    private int pairMask, pairCount;
+
+    private OverlapListener listener;
+    private Entity[] events = new Entity[64];
+    private boolean[] eventBegins = new boolean[32];
+    private int eventCount;
+
+    // scratch space for nearest queries, per thread so queries can run in parallel.
+    private final ThreadLocal<double[]> nearestScratch = ThreadLocal.withInitial(() -> new double[16]);
+
+    public SweepAndPrune() {
+        this(256);
+    }
+
+    /**
+     * @param capacity the expected amount of entities.
+     */
+    public SweepAndPrune(int capacity) {
+        capacity = Math.max(16, capacity);
+        minX = new double[capacity];
+        minY = new double[capacity];
+        maxX = new double[capacity];
+        maxY = new double[capacity];
+        minIndexX = new int[capacity];
+        maxIndexX = new int[capacity];
+        minIndexY = new int[capacity];
+        maxIndexY = new int[capacity];
+        entities = new Entity[capacity];
+        freeProxies = new int[capacity];
+
+        valuesX = new double[capacity * 2];
+        valuesY = new double[capacity * 2];
+        endpointsX = new int[capacity * 2];
+        endpointsY = new int[capacity * 2];
+
+        int pairCapacity = Integer.highestOneBit(capacity * 4 - 1) << 1;
+        pairs = new long[pairCapacity];
+        Arrays.fill(pairs, EMPTY);
+        pairMask = pairCapacity - 1;
+    }
+
+    /**
+     * Set the listener for overlap events. Events are only recorded while a listener is set.
+     *
+     * @param listener the listener, or null to stop recording events.
+     */
+    public void setOverlapListener(@Nullable OverlapListener listener) {
+        this.listener = listener;
+        if (listener == null) {
+            Arrays.fill(events, 0, eventCount * 2, null);
+            eventCount = 0;
+        }
+    }
+
+    /**
+     * Deliver the overlap events recorded since the last dispatch, in the order they happened.
+     * Events are buffered so listeners never run in the middle of a bounding box update, call this once per tick.
+     */
+    public void dispatchEvents() {
+        if (listener == null) {
+            return;
+        }
+
+        // events raised by the listener itself are delivered in the same dispatch.
+        for (int i = 0; i < eventCount; i++) {
+            Entity a = events[i * 2], b = events[i * 2 + 1];
+            if (eventBegins[i]) {
+                listener.onOverlapBegin(a, b);
+            } else {
+                listener.onOverlapEnd(a, b);
+            }
+        }
+
+        Arrays.fill(events, 0, eventCount * 2, null);
+        eventCount = 0;
+    }
+
+    @Override
+    public void add(Entity entity) {
+        if (entity.getBroadphaseProxy() != -1) {
+            throw new IllegalStateException("Entity " + entity.getEntityID() + " is already in a broadphase.");
+        }
+
+        int proxy = allocateProxy();
+        entities[proxy] = entity;
+        setBounds(proxy, entity.getBox2D());
+
+        // new endpoints start at the end of each axis and are sorted into place, which reports their overlaps.
+        if (endpointCount + 2 > endpointsX.length) {
+            growEndpoints();
+        }
+        int index = endpointCount;
+        endpointCount += 2;
+
+        valuesX[index] = minX[proxy];
+        endpointsX[index] = proxy << 1;
+        minIndexX[proxy] = index;
+        valuesX[index + 1] = maxX[proxy];
+        endpointsX[index + 1] = proxy << 1 | 1;
+        maxIndexX[proxy] = index + 1;
+
+        valuesY[index] = minY[proxy];
+        endpointsY[index] = proxy << 1;
+        minIndexY[proxy] = index;
+        valuesY[index + 1] = maxY[proxy];
+        endpointsY[index + 1] = proxy << 1 | 1;
+        maxIndexY[proxy] = index + 1;
+
+        sortProxy(proxy);
+
+        entity.setBroadphaseProxy(this, proxy);
+        size++;
+    }
+
+    @Override
+    public void remove(Entity entity) {
+        int proxy = entity.getBroadphaseProxy();
+        if (proxy == -1 || entities[proxy] != entity) {
+            return;
+        }
+
+        // move the endpoints past everything else so every overlap ends, then drop them.
+        minX[proxy] = maxX[proxy] = minY[proxy] = maxY[proxy] = Double.POSITIVE_INFINITY;
+        valuesX[minIndexX[proxy]] = valuesX[maxIndexX[proxy]] = Double.POSITIVE_INFINITY;
+        valuesY[minIndexY[proxy]] = valuesY[maxIndexY[proxy]] = Double.POSITIVE_INFINITY;
+        sortProxy(proxy);
+        endpointCount -= 2;
+
+        entities[proxy] = null;
+        freeProxies[freeCount++] = proxy;
+        entity.setBroadphaseProxy(null, -1);
+        size--;
+    }
+
+    @Override
+    public void update(Entity entity) {
+        int proxy = entity.getBroadphaseProxy();
+        BoundingBox2D box = entity.getBox2D();
+        double x = box.getMinX(), y = box.getMinY();
+        double right = box.getMaxX(), bottom = box.getMaxY();
+        if (x == minX[proxy] && y == minY[proxy] && right == maxX[proxy] && bottom == maxY[proxy]) {
+            return;
+        }
+
+        minX[proxy] = x;
+        minY[proxy] = y;
+        maxX[proxy] = right;
+        maxY[proxy] = bottom;
+        valuesX[minIndexX[proxy]] = x;
+        valuesX[maxIndexX[proxy]] = right;
+        valuesY[minIndexY[proxy]] = y;
+        valuesY[maxIndexY[proxy]] = bottom;
+        sortProxy(proxy);
+    }
+
+    /**
+     * Sort the endpoints of a proxy into place on both axes. Bounds must be updated on both axes first.
+     */
+    private void sortProxy(int proxy) {
+        sortAxis(valuesX, endpointsX, minIndexX, maxIndexX, proxy);
+        sortAxis(valuesY, endpointsY, minIndexY, maxIndexY, proxy);
+    }
+
+    private void sortAxis(double[] values, int[] endpoints, int[] minIndex, int[] maxIndex, int proxy) {
+        // insertion sort only works on one out of place endpoint, so move the endpoint that leads first:
+        // the upper one when it has to move up, otherwise the lower one.
+        int[] lowerIndex = minIndex[proxy] < maxIndex[proxy] ? minIndex : maxIndex;
+        int[] upperIndex = lowerIndex == minIndex ? maxIndex : minIndex;
+        int upper = upperIndex[proxy];
+        if (upper + 1 < endpointCount && before(values[upper + 1], endpoints[upper + 1], values[upper], endpoints[upper])) {
+            // only up, on a tie it could otherwise drop below its own endpoint and get stuck there.
+            sort(values, endpoints, minIndex, maxIndex, upper, false);
+            sort(values, endpoints, minIndex, maxIndex, lowerIndex[proxy], true);
+        } else {
+            sort(values, endpoints, minIndex, maxIndex, lowerIndex[proxy], true);
+            sort(values, endpoints, minIndex, maxIndex, upperIndex[proxy], true);
+        }
+    }
+
+    /**
+     * Insertion sort a single endpoint. Whenever a min passes a max the pair may start or stop overlapping.
+     */
+    private void sort(double[] values, int[] endpoints, int[] minIndex, int[] maxIndex, int index, boolean down) {
+        double value = values[index];
+        int endpoint = endpoints[index];
+        boolean isMax = (endpoint & 1) == 1;
+        int proxy = endpoint >>> 1;
+
+        // move down.
+        while (down && index > 0 && before(value, endpoint, values[index - 1], endpoints[index - 1])) {
+            int other = endpoints[index - 1];
+            int otherProxy = other >>> 1;
+            if (otherProxy != proxy && isMax != ((other & 1) == 1)) {
+                if (isMax) {
+                    // our max is now before their min.
+                    removePair(proxy, otherProxy);
+                } else if (overlaps(proxy, otherProxy)) {
+                    addPair(proxy, otherProxy);
+                }
+            }
+
+            values[index] = values[index - 1];
+            endpoints[index] = other;
+            setIndex(minIndex, maxIndex, other, index);
+            index--;
+        }
+
+        // move up.
+        while (index < endpointCount - 1 && before(values[index + 1], endpoints[index + 1], value, endpoint)) {
+            int other = endpoints[index + 1];
+            int otherProxy = other >>> 1;
+            if (otherProxy != proxy && isMax != ((other & 1) == 1)) {
+                if (isMax) {
+                    // their min is now before our max.
+                    if (overlaps(proxy, otherProxy)) {
+                        addPair(proxy, otherProxy);
+                    }
+                } else {
+                    removePair(proxy, otherProxy);
+                }
+            }
+
+            values[index] = values[index + 1];
+            endpoints[index] = other;
+            setIndex(minIndex, maxIndex, other, index);
+            index++;
+        }
+
+        values[index] = value;
+        endpoints[index] = endpoint;
+        setIndex(minIndex, maxIndex, endpoint, index);
+    }
+
+    /**
+     * Endpoints are ordered by value, with a max before a min on ties so touching boxes don't overlap.
+     * A box with no width may have its max before its own min.
+     */
+    private static boolean before(double value, int endpoint, double otherValue, int otherEndpoint) {
+        return value < otherValue || (value == otherValue && (endpoint & 1) == 1 && (otherEndpoint & 1) == 0);
+    }
+
+    private static void setIndex(int[] minIndex, int[] maxIndex, int endpoint, int index) {
+        if ((endpoint & 1) == 1) {
+            maxIndex[endpoint >>> 1] = index;
+        } else {
+            minIndex[endpoint >>> 1] = index;
+        }
+    }
+
+    private boolean overlaps(int a, int b) {
+        return minX[a] < maxX[b] && minX[b] < maxX[a] && minY[a] < maxY[b] && minY[b] < maxY[a];
+    }
+
+    @Override
+    public int queryRegion(double x, double y, double width, double height, Entity[] results) {
+        return collect(x, y, x + width, y + height, 0, 0, -1, results);
+    }
+
+    @Override
+    public int queryRadius(double x, double y, double radius, Entity[] results) {
+        return collect(x - radius, y - radius, x + radius, y + radius, x, y, radius * radius, results);
+    }
+
+    /**
+     * Collect proxies overlapping a region by scanning the shorter side of the X axis,
+     * either every min left of the region's right edge or every max right of its left edge.
+     */
+    private int collect(double queryMinX, double queryMinY, double queryMaxX, double queryMaxY, double px, double py, double radiusSquared,
+                        Entity[] results) {
+        if (results.length == 0) {
+            return 0;
+        }
+
+        int left = upperBound(queryMaxX);
+        int right = lowerBound(queryMinX);
+        int from, to, kind;
+        if (left <= endpointCount - right) {
+            from = 0;
+            to = left;
+            kind = 0;
+        } else {
+            from = right;
+            to = endpointCount;
+            kind = 1;
+        }
+
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            int endpoint = endpointsX[i];
+            if ((endpoint & 1) != kind) {
+                continue;
+            }
+
+            int proxy = endpoint >>> 1;
+            if (minX[proxy] > queryMaxX || maxX[proxy] < queryMinX || minY[proxy] > queryMaxY || maxY[proxy] < queryMinY) {
+                continue;
+            }
+
+            if (radiusSquared < 0 || distanceSquared(proxy, px, py) <= radiusSquared) {
+                results[count++] = entities[proxy];
+                if (count == results.length) {
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the index of the first X endpoint with a value greater than the given value.
+     */
+    private int upperBound(double value) {
+        int low = 0, high = endpointCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (valuesX[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the first X endpoint with a value greater than or equal to the given value.
+     */
+    private int lowerBound(double value) {
+        int low = 0, high = endpointCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (valuesX[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public int queryNearest(double x, double y, Entity[] results) {
+        int k = results.length;
+        if (k == 0) {
+            return 0;
+        }
+
+        double[] nearestDistances = nearestScratch.get();
+        if (nearestDistances.length < k) {
+            nearestDistances = new double[k];
+            nearestScratch.set(nearestDistances);
+        }
+
+        int found = 0;
+        for (int i = 0; i < endpointCount; i++) {
+            int endpoint = endpointsX[i];
+            if ((endpoint & 1) == 1) {
+                continue;
+            }
+
+            int proxy = endpoint >>> 1;
+            double distance = distanceSquared(proxy, x, y);
+            if (found == k && distance >= nearestDistances[k - 1]) {
+                continue;
+            }
+
+            int index = found == k ? k - 1 : found++;
+            while (index > 0 && nearestDistances[index - 1] > distance) {
+                nearestDistances[index] = nearestDistances[index - 1];
+                results[index] = results[index - 1];
+                index--;
+            }
+            nearestDistances[index] = distance;
+            results[index] = entities[proxy];
+        }
+        return found;
+    }
+
+    private double distanceSquared(int proxy, double x, double y) {
+        double dx = Math.max(0, Math.max(minX[proxy] - x, x - maxX[proxy]));
+        double dy = Math.max(0, Math.max(minY[proxy] - y, y - maxY[proxy]));
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Walks the persistent pair set, no pairs are tested.
+     */
+    @Override
+    public void forEachOverlap(OverlapCallback callback) {
+        for (long key : pairs) {
+            if (key != EMPTY) {
+                callback.onOverlap(entities[(int) (key >>> 32)], entities[(int) key]);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the amount of overlapping pairs.
+     */
+    public int getPairCount() {
+        return pairCount;
+    }
+
+    private void addPair(int a, int b) {
+        long key = key(a, b);
+        int slot = slot(key);
+        while (pairs[slot] != EMPTY) {
+            if (pairs[slot] == key) {
+                return;
+            }
+            slot = (slot + 1) & pairMask;
+        }
+
+        pairs[slot] = key;
+        recordEvent(a, b, true);
+        if (++pairCount > (pairMask + 1) * 3 / 4) {
+            resizePairs();
+        }
+    }
+
+    private void removePair(int a, int b) {
+        long key = key(a, b);
+        int slot = slot(key);
+        while (pairs[slot] != EMPTY) {
+            if (pairs[slot] == key) {
+                deletePair(slot);
+                recordEvent(a, b, false);
+                return;
+            }
+            slot = (slot + 1) & pairMask;
+        }
+    }
+
+    /**
+     * Empty a slot and shift the following entries of the probe sequence back.
+     */
+    private void deletePair(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & pairMask;
+        while (pairs[next] != EMPTY) {
+            int home = slot(pairs[next]);
+            if (((next - home) & pairMask) >= ((next - gap) & pairMask)) {
+                pairs[gap] = pairs[next];
+                gap = next;
+            }
+            next = (next + 1) & pairMask;
+        }
+
+        pairs[gap] = EMPTY;
+        pairCount--;
+    }
+
+    private void resizePairs() {
+        long[] old = pairs;
+        int capacity = old.length << 1;
+        pairs = new long[capacity];
+        Arrays.fill(pairs, EMPTY);
+        pairMask = capacity - 1;
+
+        for (long key : old) {
+            if (key == EMPTY) {
+                continue;
+            }
+            int slot = slot(key);
+            while (pairs[slot] != EMPTY) {
+                slot = (slot + 1) & pairMask;
+            }
+            pairs[slot] = key;
+        }
+    }
+
+    private static long key(int a, int b) {
+        return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & pairMask;
+    }
+
+    private void recordEvent(int a, int b, boolean begin) {
+        if (listener == null) {
+            return;
+        }
+
+        if (eventCount == eventBegins.length) {
+            eventBegins = Arrays.copyOf(eventBegins, eventCount << 1);
+            events = Arrays.copyOf(events, eventCount << 2);
+        }
+        events[eventCount * 2] = entities[a];
+        events[eventCount * 2 + 1] = entities[b];
+        eventBegins[eventCount++] = begin;
+    }
+
+    private void setBounds(int proxy, BoundingBox2D box) {
+        minX[proxy] = box.getMinX();
+        minY[proxy] = box.getMinY();
+        maxX[proxy] = box.getMaxX();
+        maxY[proxy] = box.getMaxY();
+    }
+
+    private int allocateProxy() {
+        if (freeCount > 0) {
+            return freeProxies[--freeCount];
+        }
+
+        if (proxyCount == entities.length) {
+            int capacity = entities.length << 1;
+            minX = Arrays.copyOf(minX, capacity);
+            minY = Arrays.copyOf(minY, capacity);
+            maxX = Arrays.copyOf(maxX, capacity);
+            maxY = Arrays.copyOf(maxY, capacity);
+            minIndexX = Arrays.copyOf(minIndexX, capacity);
+            maxIndexX = Arrays.copyOf(maxIndexX, capacity);
+            minIndexY = Arrays.copyOf(minIndexY, capacity);
+            maxIndexY = Arrays.copyOf(maxIndexY, capacity);
+            entities = Arrays.copyOf(entities, capacity);
+            freeProxies = Arrays.copyOf(freeProxies, capacity);
+        }
+        return proxyCount++;
+    }
+
+    private void growEndpoints() {
+        int capacity = endpointsX.length << 1;
+        valuesX = Arrays.copyOf(valuesX, capacity);
+        valuesY = Arrays.copyOf(valuesY, capacity);
+        endpointsX = Arrays.copyOf(endpointsX, capacity);
+        endpointsY = Arrays.copyOf(endpointsY, capacity);
+    }
+
+}
@@ -1,19 +1,57 @@
 package stellar.core.entity;
 
+import com.sun.istack.internal.Nullable;
 import stellar.core.collision.BoundingBox2D;
+import stellar.core.collision.CollisionMask;
+import stellar.core.collision.broadphase.Broadphase;
+import stellar.core.sprite.animation.Animator;
+import stellar.core.world.entity.ActivityLevel;
+import stellar.core.world.entity.EntityPool;
+import stellar.core.world.entity.EntityStore;
 
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 
+/**
+ * The base of every entity.
+ * <p>
+ * An entity can be attached to an {@link EntityStore}, while attached its position, velocity, size and flags live in
+ * the store and the fields of this class are not kept up to date, so use the getters and setters for entities that
+ * may be attached. The fields are copied back into this entity when it is detached.
+ * <p>
+ * The state the world, broadphase and pool keep on an entity is private, it is managed through their own methods.
+ */
 public abstract class Entity {
 
+    // stale while attached to a store, see the class documentation.
     protected double x, y;
     protected double width, height;
+    protected double velocityX, velocityY;
+    protected int flags;
     protected int entityID;
 
+    private EntityStore store;
+    private int storeHandle = -1;
+
+    private Broadphase broadphase;
+    private int broadphaseProxy = -1;
+    private boolean broadphaseDeferred, broadphaseDirty;
+    private int worldSlot = -1;
+
+    private EntityPool<?> pool;
+    private boolean free;
+
+    private ActivityLevel activityLevel = ActivityLevel.FULL;
+    // the world tick this entity was last classified and last updated at.
+    private long activityTick = -1, lastUpdateTick;
+
     protected BoundingBox2D box2D;
+    protected CollisionMask collisionMask;
     protected BufferedImage texture;
 
+    protected Animator animator;
+    protected long animation;
+
     /**
      * Initialize this entity; this is the primary constructor.
      *
@@ -98,53 +136,335 @@ public abstract class Entity {
      */
     public abstract void updateEntity();
 
+    /**
+     * Update the entity after it was not updated for some ticks because of its {@link ActivityLevel}.
+     * By default this is a single update, override to catch up on the ticks that were skipped.
+     *
+     * @param ticks the amount of ticks since the last update, at least 1.
+     */
+    public void updateEntity(int ticks) {
+        updateEntity();
+    }
+
     /**
      * Update the entity boundingBox, this should be done when position is updated.
      */
     public void updateBoundingBox() {
-        box2D.set(x, y, width, height);
+        box2D.set(getX(), getY(), getWidth(), getHeight());
+        if (broadphase != null) {
+            if (broadphaseDeferred) {
+                broadphaseDirty = true;
+            } else {
+                broadphase.update(this);
+            }
+        }
+    }
+
+    /**
+     * Defer broadphase updates, used while entities are updated in parallel since broadphases are not thread safe.
+     * When deferring stops the broadphase is updated once if the bounding box changed in the meantime.
+     *
+     * @param deferred true to defer broadphase updates.
+     */
+    public void setBroadphaseDeferred(boolean deferred) {
+        broadphaseDeferred = deferred;
+        if (!deferred && broadphaseDirty) {
+            broadphaseDirty = false;
+            if (broadphase != null) {
+                broadphase.update(this);
+            }
+        }
+    }
+
+    /**
+     * Set the broadphase tracking this entity. This is managed by the broadphase itself.
+     *
+     * @param broadphase the broadphase, or null.
+     * @param proxy      the proxy of this entity in the broadphase, or -1.
+     */
+    public void setBroadphaseProxy(Broadphase broadphase, int proxy) {
+        this.broadphase = broadphase;
+        this.broadphaseProxy = proxy;
+    }
+
+    /**
+     * @return the proxy of this entity in its broadphase, -1 if not tracked.
+     */
+    public int getBroadphaseProxy() {
+        return broadphaseProxy;
+    }
+
+    /**
+     * Set the index of this entity in its world's entity list. This is managed by the world itself.
+     *
+     * @param slot the index, or -1.
+     */
+    public void setWorldSlot(int slot) {
+        this.worldSlot = slot;
+    }
+
+    /**
+     * @return the index of this entity in its world's entity list, -1 if not in a world.
+     */
+    public int getWorldSlot() {
+        return worldSlot;
+    }
+
+    /**
+     * Reset this entity so it can be spawned again, called when it is obtained from an {@link EntityPool}.
+     * The animation, collision mask and activity state of the previous life are cleared, the texture is kept.
+     * Subclasses that keep their own state should override this and call super.
+     *
+     * @param x        the new x position.
+     * @param y        the new y position.
+     * @param entityID the new unique identifier.
+     */
+    public void reset(double x, double y, int entityID) {
+        setX(x);
+        setY(y);
+        this.entityID = entityID;
+        setVelocity(0, 0);
+        setFlags(0);
+        broadphaseDirty = false;
+        box2D.set(x, y, getWidth(), getHeight());
+
+        clearAnimation();
+        collisionMask = null;
+        activityLevel = ActivityLevel.FULL;
+        activityTick = -1;
+        lastUpdateTick = 0;
+    }
+
+    /**
+     * Set the pool that owns this entity. This is managed by the pool itself.
+     *
+     * @param pool the pool, or null.
+     * @param free true if this entity is waiting in the pool.
+     */
+    public void setPool(@Nullable EntityPool<?> pool, boolean free) {
+        this.pool = pool;
+        this.free = free;
+    }
+
+    /**
+     * @return the pool that owns this entity, null if it was not obtained from a pool.
+     */
+    @Nullable
+    public EntityPool<?> getPool() {
+        return pool;
+    }
+
+    /**
+     * @return true if this entity is waiting in its pool and must not be used.
+     */
+    public boolean isFree() {
+        return free;
+    }
+
+    /**
+     * Set the activity level of this entity. This is managed by the world itself.
+     * Time spent dormant is not counted towards the ticks passed to {@link #updateEntity(int)}.
+     *
+     * @param level the level.
+     * @param tick  the current world tick.
+     */
+    public void setActivityLevel(ActivityLevel level, long tick) {
+        if (activityLevel == ActivityLevel.DORMANT && level != ActivityLevel.DORMANT) {
+            lastUpdateTick = tick;
+        }
+        activityLevel = level;
+        activityTick = tick;
+    }
+
+    /**
+     * @return the activity level of this entity.
+     */
+    public ActivityLevel getActivityLevel() {
+        return activityLevel;
+    }
+
+    /**
+     * @return the world tick this entity's activity level was last set at.
+     */
+    public long getActivityTick() {
+        return activityTick;
+    }
+
+    /**
+     * Record an update. This is managed by the world itself.
+     *
+     * @param tick the current world tick.
+     * @return the amount of ticks since the last update, at least 1.
+     */
+    public int markUpdated(long tick) {
+        int ticks = (int) Math.max(1, Math.min(Integer.MAX_VALUE, tick - lastUpdateTick));
+        lastUpdateTick = tick;
+        return ticks;
+    }
+
+    /**
+     * Attach this entity to a store, moving its hot fields into the store.
+     *
+     * @param store the store.
+     */
+    public void attach(EntityStore store) {
+        if (this.store != null) {
+            detach();
+        }
+
+        storeHandle = store.add(this);
+        store.setX(storeHandle, x);
+        store.setY(storeHandle, y);
+        store.setVelocityX(storeHandle, velocityX);
+        store.setVelocityY(storeHandle, velocityY);
+        store.setWidth(storeHandle, width);
+        store.setHeight(storeHandle, height);
+        store.setFlags(storeHandle, flags);
+        this.store = store;
+    }
+
+    /**
+     * Detach this entity from its store, copying the hot fields back into this entity.
+     */
+    public void detach() {
+        if (store == null) {
+            return;
+        }
+
+        x = store.getX(storeHandle);
+        y = store.getY(storeHandle);
+        velocityX = store.getVelocityX(storeHandle);
+        velocityY = store.getVelocityY(storeHandle);
+        width = store.getWidth(storeHandle);
+        height = store.getHeight(storeHandle);
+        flags = store.getFlags(storeHandle);
+
+        store.remove(storeHandle);
+        store = null;
+        storeHandle = -1;
+    }
+
+    /**
+     * @return the handle of this entity in its store, -1 if not attached.
+     */
+    public int getStoreHandle() {
+        return storeHandle;
     }
 
     /**
      * Get the X
      */
     public double getX() {
-        return x;
+        return store == null ? x : store.getX(storeHandle);
     }
 
     /**
      * Get the Y
      */
     public double getY() {
-        return y;
+        return store == null ? y : store.getY(storeHandle);
     }
 
     /**
      * Set x
      */
     public void setX(double x) {
-        this.x = x;
+        if (store == null) {
+            this.x = x;
+        } else {
+            store.setX(storeHandle, x);
+        }
     }
 
     /**
      * Set y
      */
     public void setY(double y) {
-        this.y = y;
+        if (store == null) {
+            this.y = y;
+        } else {
+            store.setY(storeHandle, y);
+        }
     }
 
     /**
      * Get the width of the entity.
      */
     public double getWidth() {
-        return width;
+        return store == null ? width : store.getWidth(storeHandle);
     }
 
     /**
      * Get the height of the entity.
      */
     public double getHeight() {
-        return height;
+        return store == null ? height : store.getHeight(storeHandle);
+    }
+
+    /**
+     * Set the size of the entity.
+     *
+     * @param width  the width.
+     * @param height the height.
+     */
+    public void setSize(double width, double height) {
+        if (store == null) {
+            this.width = width;
+            this.height = height;
+        } else {
+            store.setWidth(storeHandle, width);
+            store.setHeight(storeHandle, height);
+        }
+    }
+
+    /**
+     * @return the X velocity of this entity.
+     */
+    public double getVelocityX() {
+        return store == null ? velocityX : store.getVelocityX(storeHandle);
+    }
+
+    /**
+     * @return the Y velocity of this entity.
+     */
+    public double getVelocityY() {
+        return store == null ? velocityY : store.getVelocityY(storeHandle);
+    }
+
+    /**
+     * Set the velocity of this entity.
+     *
+     * @param velocityX the X velocity.
+     * @param velocityY the Y velocity.
+     */
+    public void setVelocity(double velocityX, double velocityY) {
+        if (store == null) {
+            this.velocityX = velocityX;
+            this.velocityY = velocityY;
+        } else {
+            store.setVelocityX(storeHandle, velocityX);
+            store.setVelocityY(storeHandle, velocityY);
+        }
+    }
+
+    /**
+     * @return the user defined flags of this entity.
+     */
+    public int getFlags() {
+        return store == null ? flags : store.getFlags(storeHandle);
+    }
+
+    /**
+     * Set the user defined flags of this entity.
+     *
+     * @param flags the flags.
+     */
+    public void setFlags(int flags) {
+        if (store == null) {
+            this.flags = flags;
+        } else {
+            store.setFlags(storeHandle, flags);
+        }
     }
 
     /**
@@ -153,7 +473,7 @@ public abstract class Entity {
      * @return true if the entity is at the exact coordinates.
      */
     public boolean isAt(double x, double y) {
-        return this.x == x && this.y == y;
+        return getX() == x && getY() == y;
     }
 
     /**
@@ -171,10 +491,55 @@ public abstract class Entity {
     }
 
     /**
-     * @return the texture for this entity.
+     * Set the collision mask for this entity, one mask pixel per world unit starting at the entity position.
+     *
+     * @param collisionMask the mask, or null to only collide by bounding box.
+     */
+    public void setCollisionMask(@Nullable CollisionMask collisionMask) {
+        this.collisionMask = collisionMask;
+    }
+
+    /**
+     * @return the collision mask for this entity, null if none is set.
+     */
+    @Nullable
+    public CollisionMask getCollisionMask() {
+        return collisionMask;
+    }
+
+    /**
+     * Test if this entity collides with another. The bounding boxes are tested first,
+     * only when they intersect and both entities have a collision mask are the masks tested.
+     *
+     * @param other the other entity.
+     * @return true if the entities collide.
+     */
+    public boolean collidesWith(Entity other) {
+        if (!box2D.intersects(other.box2D)) {
+            return false;
+        }
+
+        CollisionMask otherMask = other.collisionMask;
+        if (collisionMask == null || otherMask == null) {
+            return true;
+        }
+
+        int offsetX = (int) Math.floor(other.box2D.getMinX()) - (int) Math.floor(box2D.getMinX());
+        int offsetY = (int) Math.floor(other.box2D.getMinY()) - (int) Math.floor(box2D.getMinY());
+        return collisionMask.overlaps(otherMask, offsetX, offsetY);
+    }
+
+    /**
+     * @return the texture for this entity, the current frame if an animation is set.
      */
     public BufferedImage getTexture() {
-        return texture;
+        if (animator == null) {
+            return texture;
+        }
+
+        // fall back to the texture once the animation was stopped.
+        BufferedImage frame = animator.getFrame(animation);
+        return frame == null ? texture : frame;
     }
 
     /**
@@ -185,4 +550,30 @@ public abstract class Entity {
     public void setTexture(BufferedImage texture) {
         this.texture = texture;
     }
+
+    /**
+     * Set the animation for this entity. While set, the current frame is used instead of the texture.
+     *
+     * @param animator the animator that plays the animation.
+     * @param handle   the handle returned from Animator#play.
+     */
+    public void setAnimation(Animator animator, long handle) {
+        this.animator = animator;
+        this.animation = handle;
+    }
+
+    /**
+     * Remove the animation for this entity, the texture will be used again.
+     */
+    public void clearAnimation() {
+        animator = null;
+        animation = 0;
+    }
+
+    /**
+     * @return the handle of the animation for this entity, 0 if none is set.
+     */
+    public long getAnimation() {
+        return animation;
+    }
 }
@@ -9,6 +9,9 @@ public abstract class LivingEntity extends Entity {
 
     protected float health;
     protected double movementSpeed;
+    // the values this entity was created with, restored when it is reset.
+    protected float spawnHealth;
+    protected double spawnMovementSpeed;
 
     /**
      * Initialize this entity.
@@ -24,8 +27,8 @@ public abstract class LivingEntity extends Entity {
     public LivingEntity(double x, double y, double width, double height, int entityID, float health, double movementSpeed) {
         super(x, y, width, height, entityID);
 
-        this.health = health;
-        this.movementSpeed = movementSpeed;
+        this.health = this.spawnHealth = health;
+        this.movementSpeed = this.spawnMovementSpeed = movementSpeed;
     }
 
     /**
@@ -43,8 +46,8 @@ public abstract class LivingEntity extends Entity {
     public LivingEntity(BufferedImage texture, double x, double y, double width, double height, int entityID, float health, double movementSpeed) {
         super(texture, x, y, width, height, entityID);
 
-        this.health = health;
-        this.movementSpeed = movementSpeed;
+        this.health = this.spawnHealth = health;
+        this.movementSpeed = this.spawnMovementSpeed = movementSpeed;
     }
 
     /**
@@ -61,8 +64,8 @@ public abstract class LivingEntity extends Entity {
      */
     public LivingEntity(double x, double y, double width, double height, int entityID, BoundingBox2D bb, float health, double movementSpeed) {
         super(x, y, width, height, entityID, bb);
-        this.health = health;
-        this.movementSpeed = movementSpeed;
+        this.health = this.spawnHealth = health;
+        this.movementSpeed = this.spawnMovementSpeed = movementSpeed;
     }
 
     /**
@@ -80,8 +83,23 @@ public abstract class LivingEntity extends Entity {
      */
     public LivingEntity(BufferedImage texture, double x, double y, double width, double height, int entityID, BoundingBox2D bb, float health, double movementSpeed) {
         super(texture, x, y, width, height, entityID, bb);
-        this.health = health;
-        this.movementSpeed = movementSpeed;
+        this.health = this.spawnHealth = health;
+        this.movementSpeed = this.spawnMovementSpeed = movementSpeed;
+    }
+
+    /**
+     * Reset this entity so it can be spawned again, the health and movement speed are restored to the values
+     * this entity was created with.
+     *
+     * @param x        the new x position.
+     * @param y        the new y position.
+     * @param entityID the new unique identifier.
+     */
+    @Override
+    public void reset(double x, double y, int entityID) {
+        super.reset(x, y, entityID);
+        health = spawnHealth;
+        movementSpeed = spawnMovementSpeed;
     }
 
     /**
@@ -0,0 +1,148 @@
+package stellar.core.sprite;
+
+import com.sun.istack.internal.Nullable;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of generated images, bounded by the total amount of pixels it holds.
+ * Every method is synchronized so the cache can be shared between threads.
+ *
+ * @param <K> the key type.
+ */
+public final class ImageCache<K> {
+
+    // access ordered, the eldest entry is the least recently used one.
+    private final LinkedHashMap<K, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long budget;
+    private long pixels;
+    private long hits, misses, evictions;
+
+    /**
+     * @param budget the maximum amount of pixels to keep.
+     */
+    public ImageCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @param key the key.
+     * @return the cached image or null.
+     */
+    @Nullable
+    public synchronized BufferedImage get(K key) {
+        BufferedImage image = images.get(key);
+        if (image == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return image;
+    }
+
+    /**
+     * Cache an image, evicting the least recently used images if the budget is exceeded.
+     * An image larger than the whole budget is not cached.
+     *
+     * @param key   the key.
+     * @param image the image.
+     */
+    public synchronized void put(K key, BufferedImage image) {
+        long size = (long) image.getWidth() * image.getHeight();
+        if (size > budget) {
+            return;
+        }
+
+        BufferedImage previous = images.put(key, image);
+        if (previous != null) {
+            pixels -= (long) previous.getWidth() * previous.getHeight();
+        }
+        pixels += size;
+        trim();
+    }
+
+    /**
+     * @param key the key to remove.
+     */
+    public synchronized void remove(K key) {
+        BufferedImage image = images.remove(key);
+        if (image != null) {
+            pixels -= (long) image.getWidth() * image.getHeight();
+        }
+    }
+
+    /**
+     * Remove every image.
+     */
+    public synchronized void clear() {
+        images.clear();
+        pixels = 0;
+    }
+
+    /**
+     * Set the budget, evicting images if needed.
+     *
+     * @param budget the maximum amount of pixels to keep.
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        trim();
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<K, BufferedImage>> iterator = images.entrySet().iterator();
+        while (pixels > budget && iterator.hasNext()) {
+            BufferedImage image = iterator.next().getValue();
+            pixels -= (long) image.getWidth() * image.getHeight();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * @return the maximum amount of pixels to keep.
+     */
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the amount of pixels currently held.
+     */
+    public synchronized long getPixels() {
+        return pixels;
+    }
+
+    /**
+     * @return the amount of images currently held.
+     */
+    public synchronized int size() {
+        return images.size();
+    }
+
+    /**
+     * @return how many lookups found an image.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return how many lookups did not find an image.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return how many images were evicted to stay within the budget.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+}
@@ -0,0 +1,120 @@
+package stellar.core.sprite;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * A chain of half-size, box filtered copies of a texture, used when drawing textures smaller than their real size.
+ * Level 0 is the original texture, it is not kept in the chain and is passed in when looking up a level. This way a
+ * chain never keeps its texture alive, so chains can be cached weakly by texture.
+ */
+public final class Mipmap {
+
+    private final BufferedImage[] levels;
+
+    private Mipmap(BufferedImage[] levels) {
+        this.levels = levels;
+    }
+
+    /**
+     * Generate every level below the texture, down to 1x1.
+     *
+     * @param texture the texture.
+     * @return the mip chain.
+     */
+    public static Mipmap generate(BufferedImage texture) {
+        int width = texture.getWidth();
+        int height = texture.getHeight();
+
+        int count = 0;
+        for (int w = width, h = height; w > 1 || h > 1; w = Math.max(1, w >> 1), h = Math.max(1, h >> 1)) {
+            count++;
+        }
+
+        // levels[0] is the first half-size level.
+        BufferedImage[] levels = new BufferedImage[count];
+
+        int[] source = texture.getRGB(0, 0, width, height, null, 0, width);
+        for (int level = 0; level < count; level++) {
+            int newWidth = Math.max(1, width >> 1);
+            int newHeight = Math.max(1, height >> 1);
+
+            BufferedImage image = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_ARGB);
+            int[] destination = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            downsample(source, width, height, destination, newWidth, newHeight);
+
+            levels[level] = image;
+            source = destination;
+            width = newWidth;
+            height = newHeight;
+        }
+        return new Mipmap(levels);
+    }
+
+    /**
+     * Box filter a 2x2 block of source pixels into each destination pixel.
+     * Colors are weighted by alpha so transparent pixels do not darken the edges of sprites.
+     */
+    private static void downsample(int[] source, int width, int height, int[] destination, int newWidth, int newHeight) {
+        for (int y = 0; y < newHeight; y++) {
+            int row0 = Math.min(y << 1, height - 1) * width;
+            int row1 = Math.min((y << 1) + 1, height - 1) * width;
+
+            for (int x = 0; x < newWidth; x++) {
+                int x0 = Math.min(x << 1, width - 1);
+                int x1 = Math.min((x << 1) + 1, width - 1);
+
+                int p0 = source[row0 + x0], p1 = source[row0 + x1], p2 = source[row1 + x0], p3 = source[row1 + x1];
+                int a0 = p0 >>> 24, a1 = p1 >>> 24, a2 = p2 >>> 24, a3 = p3 >>> 24;
+                int alpha = a0 + a1 + a2 + a3;
+
+                if (alpha == 0) {
+                    destination[y * newWidth + x] = 0;
+                    continue;
+                }
+
+                int r = ((p0 >> 16) & 0xFF) * a0 + ((p1 >> 16) & 0xFF) * a1 + ((p2 >> 16) & 0xFF) * a2 + ((p3 >> 16) & 0xFF) * a3;
+                int g = ((p0 >> 8) & 0xFF) * a0 + ((p1 >> 8) & 0xFF) * a1 + ((p2 >> 8) & 0xFF) * a2 + ((p3 >> 8) & 0xFF) * a3;
+                int b = (p0 & 0xFF) * a0 + (p1 & 0xFF) * a1 + (p2 & 0xFF) * a2 + (p3 & 0xFF) * a3;
+
+                destination[y * newWidth + x] = ((alpha + 2) >> 2) << 24 | (r / alpha) << 16 | (g / alpha) << 8 | (b / alpha);
+            }
+        }
+    }
+
+    /**
+     * Get the level to use when drawing at a scale.
+     * The largest level that is not smaller than the drawn size is picked so the result is never magnified.
+     *
+     * @param texture the texture this chain was generated from.
+     * @param scale   the size on screen divided by the size of the texture.
+     * @return the level to draw.
+     */
+    public BufferedImage getLevel(BufferedImage texture, double scale) {
+        // floor(log2(1 / scale)) without the logarithm.
+        int level = 0;
+        double size = scale;
+        while (size <= 0.5 && level < levels.length) {
+            size *= 2;
+            level++;
+        }
+        return getImage(texture, level);
+    }
+
+    /**
+     * @param texture the texture this chain was generated from.
+     * @param level   the level.
+     * @return the image at the level, the texture itself for level 0.
+     */
+    public BufferedImage getImage(BufferedImage texture, int level) {
+        return level == 0 ? texture : levels[level - 1];
+    }
+
+    /**
+     * @return the amount of levels, including the original texture.
+     */
+    public int getLevelCount() {
+        return levels.length + 1;
+    }
+
+}
@@ -1,18 +1,40 @@
 package stellar.core.sprite;
 
 import com.sun.istack.internal.Nullable;
+import stellar.core.collision.CollisionMask;
+import stellar.core.sprite.cache.PixelCache;
+import stellar.core.sprite.color.ColorTransform;
+import stellar.core.sprite.indexed.IndexedImage;
+import stellar.core.sprite.indexed.Palette;
+import stellar.core.sprite.pack.AssetPack;
+import stellar.core.sprite.pack.ByteBufferInputStream;
 import stellar.core.tile.Tile;
 import stellar.log.DebugLogger;
 
 import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * Loads, stores and derives the images of a game.
+ * <p>
+ * Every method is safe to call from any thread, so images can be loaded and added from GameState#onLoad while the
+ * current state keeps ticking and drawing. Images handed out are shared and must not be drawn into.
+ */
 public class SpriteManager {
 
     /**
@@ -22,7 +44,86 @@ public class SpriteManager {
         UP, DOWN, LEFT, RIGHT
     }
 
-    private final Map<String, BufferedImage> bufferedImageMap = new HashMap<>();
+    private final Map<String, BufferedImage> bufferedImageMap = new ConcurrentHashMap<>();
+    private final Map<String, IndexedImage> indexedImageMap = new ConcurrentHashMap<>();
+
+    // expanded regions of indexed images, 1M pixels (4MB) by default.
+    private final ImageCache<RegionKey> residentCache = new ImageCache<>(1 << 20);
+    // images that had a region larger than the whole resident budget expanded, so the warning is only logged once.
+    private final Set<String> oversizedWarnings = ConcurrentHashMap.newKeySet();
+    private final List<AssetPack> assetPacks = new CopyOnWriteArrayList<>();
+    private volatile PixelCache pixelCache;
+
+    // weak so mip chains are dropped together with their textures, chains do not reference their own texture.
+    private final Map<BufferedImage, Mipmap> mipmaps = Collections.synchronizedMap(new WeakHashMap<>());
+    private final Map<BufferedImage, CollisionMask> collisionMasks = Collections.synchronizedMap(new WeakHashMap<>());
+
+    // 4M pixels (16MB) of color transformed variants by default.
+    private final ImageCache<TransformKey> transformCache = new ImageCache<>(4 << 20);
+
+    /**
+     * Mount an asset pack. Images are looked up in mounted packs before the filesystem, the most recently mounted pack wins.
+     *
+     * @param path the path of the pack.
+     * @return true if the pack was mounted.
+     */
+    public boolean mountPack(String path) {
+        try {
+            AssetPack pack = AssetPack.open(Paths.get(path));
+            assetPacks.add(pack);
+            DebugLogger.i("Mounted asset pack " + path + " with " + pack.size() + " entries.");
+            return true;
+        } catch (IOException exception) {
+            DebugLogger.e("Could not mount asset pack: " + path + "! " + exception.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Unmount all asset packs.
+     */
+    public void unmountPacks() {
+        assetPacks.clear();
+    }
+
+    /**
+     * @return the mounted asset packs.
+     */
+    public List<AssetPack> getAssetPacks() {
+        return assetPacks;
+    }
+
+    /**
+     * Enable the decoded pixel cache. Images loaded after this are stored as raw ARGB rasters after their first decode
+     * and read back directly on later starts.
+     *
+     * @param directory the directory to store the cache in.
+     * @return true if the cache was enabled.
+     */
+    public boolean enablePixelCache(String directory) {
+        try {
+            pixelCache = new PixelCache(Paths.get(directory));
+            return true;
+        } catch (IOException exception) {
+            DebugLogger.e("Could not create pixel cache: " + directory + "! " + exception.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Disable the decoded pixel cache, files already written are kept.
+     */
+    public void disablePixelCache() {
+        pixelCache = null;
+    }
+
+    /**
+     * @return the decoded pixel cache, null if not enabled.
+     */
+    @Nullable
+    public PixelCache getPixelCache() {
+        return pixelCache;
+    }
 
     /**
      * @param path the path of the resource.
@@ -31,13 +132,63 @@ public class SpriteManager {
     @Nullable
     public BufferedImage loadImage(String path) {
         try {
-            return ImageIO.read(new File(path));
+            // check the mounted packs first, from a snapshot so packs can be mounted meanwhile.
+            AssetPack[] packs = assetPacks.toArray(new AssetPack[0]);
+            for (int i = packs.length - 1; i >= 0; i--) {
+                AssetPack pack = packs[i];
+                int index = pack.indexOf(path);
+                if (index >= 0) {
+                    String key = pack.getPath() + "!" + pack.getName(index);
+                    return decode(key, pack.getLength(index), pack.getLastModified(), new ByteBufferInputStream(pack.get(index)));
+                }
+            }
+
+            File file = new File(path);
+            if (pixelCache == null) {
+                return ImageIO.read(file);
+            }
+            return decode(file.getAbsolutePath(), file.length(), file.lastModified(), file);
         } catch (IOException exception) {
             DebugLogger.e("Could not load resource: " + path + "!");
         }
         return null;
     }
 
+    /**
+     * Decode an image, going through the pixel cache if it is enabled.
+     *
+     * @param key      the cache key of the source.
+     * @param size     the size of the source.
+     * @param modified the modification time of the source.
+     * @param source   the source, a File or InputStream.
+     * @return the decoded image.
+     */
+    private BufferedImage decode(String key, long size, long modified, Object source) throws IOException {
+        PixelCache pixelCache = this.pixelCache;
+        if (pixelCache != null) {
+            BufferedImage cached = pixelCache.load(key, size, modified);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        BufferedImage image;
+        if (source instanceof File) {
+            image = ImageIO.read((File) source);
+        } else {
+            // cache in memory, otherwise ImageIO copies the whole stream to a temporary file before decoding.
+            try (ImageInputStream stream = new MemoryCacheImageInputStream((InputStream) source)) {
+                image = ImageIO.read(stream);
+            }
+        }
+        if (image != null && pixelCache != null) {
+            // cached rasters load as TYPE_INT_ARGB, so the first decode has to match.
+            image = PixelCache.toArgb(image);
+            pixelCache.store(key, size, modified, image);
+        }
+        return image;
+    }
+
     /**
      * @param image  the image
      * @param x      the origin X.
@@ -57,6 +208,10 @@ public class SpriteManager {
      * @param image the image.
      */
     public void addImage(String name, BufferedImage image) {
+        if (image == null) {
+            DebugLogger.w("[SpriteManager] Could not add image: " + name + ", the image is null.");
+            return;
+        }
         bufferedImageMap.put(name, image);
     }
 
@@ -66,8 +221,13 @@ public class SpriteManager {
      * @param name the name of the image.
      */
     public void removeImage(String name) {
-        if (bufferedImageMap.containsKey(name)) {
-            bufferedImageMap.remove(name);
+        if (bufferedImageMap.remove(name) != null) {
+            return;
+        }
+
+        if (indexedImageMap.remove(name) != null) {
+            residentCache.clear();
+            oversizedWarnings.remove(name);
             return;
         }
 
@@ -82,6 +242,11 @@ public class SpriteManager {
     public BufferedImage getImage(String name) {
         String key = bufferedImageMap.keySet().stream().filter(n -> n.equals(name)).findAny().orElse(null);
         if (key == null) {
+            IndexedImage indexed = indexedImageMap.get(name);
+            if (indexed != null) {
+                return getResidentRegion(name, indexed, 0, 0, indexed.getWidth(), indexed.getHeight());
+            }
+
             // element not found!
             DebugLogger.w("[SpriteManager] Could not get image: " + name);
             return null;
@@ -89,6 +254,206 @@ public class SpriteManager {
         return bufferedImageMap.get(key);
     }
 
+    /**
+     * Add an image in indexed storage, one byte per pixel with its own palette.
+     * If the image has more than 256 colors it is added as a normal image instead.
+     *
+     * @param name  the name of the image.
+     * @param image the image.
+     */
+    public void addIndexedImage(String name, BufferedImage image) {
+        addIndexedImage(name, image, new Palette());
+    }
+
+    /**
+     * Add an image in indexed storage, one byte per pixel with a palette that may be shared with other images.
+     * If the palette runs out of colors the image is added as a normal image instead.
+     * <p>
+     * Indexed images are expanded to ARGB when requested through {@link #getImage(String)} or
+     * {@link #getImageSection(String, int, int, int, int)}, only the most recently used regions stay resident,
+     * see {@link #setResidentBudget(long)}. A region larger than the whole budget is never kept, it is expanded
+     * again on every request.
+     *
+     * @param name    the name of the image.
+     * @param image   the image.
+     * @param palette the palette to add colors to.
+     */
+    public void addIndexedImage(String name, BufferedImage image, Palette palette) {
+        IndexedImage indexed;
+        // palettes are not thread safe, images sharing one may be added from several threads.
+        synchronized (palette) {
+            indexed = IndexedImage.fromImage(image, palette);
+        }
+        if (indexed == null) {
+            DebugLogger.w("[SpriteManager] Image " + name + " has too many colors for indexed storage, storing it as ARGB.");
+            addImage(name, image);
+            return;
+        }
+        if (indexedImageMap.put(name, indexed) != null) {
+            // drop regions expanded from the old image.
+            residentCache.clear();
+            oversizedWarnings.remove(name);
+        }
+    }
+
+    /**
+     * Get a section of a named image. For indexed images only the section is expanded to ARGB.
+     *
+     * @param name   the name of the image.
+     * @param x      the origin X.
+     * @param y      the origin Y.
+     * @param width  the width of the section.
+     * @param height the height of the section.
+     * @return the section, this can be null if the image wasn't found.
+     */
+    @Nullable
+    public BufferedImage getImageSection(String name, int x, int y, int width, int height) {
+        IndexedImage indexed = indexedImageMap.get(name);
+        if (indexed != null) {
+            return getResidentRegion(name, indexed, x, y, width, height);
+        }
+
+        BufferedImage image = getImage(name);
+        return image == null ? null : getSectionAt(image, x, y, width, height);
+    }
+
+    /**
+     * Set the maximum amount of pixels expanded indexed regions may use.
+     *
+     * @param pixels the budget in pixels.
+     */
+    public void setResidentBudget(long pixels) {
+        residentCache.setBudget(pixels);
+    }
+
+    /**
+     * @return the cache of expanded indexed regions.
+     */
+    public ImageCache<?> getResidentCache() {
+        return residentCache;
+    }
+
+    /**
+     * @return the expanded region, from the resident cache if possible.
+     */
+    private BufferedImage getResidentRegion(String name, IndexedImage indexed, int x, int y, int width, int height) {
+        RegionKey key = new RegionKey(name, x, y, width, height);
+        BufferedImage image = residentCache.get(key);
+        if (image != null) {
+            return image;
+        }
+
+        image = indexed.expand(x, y, width, height);
+        if ((long) width * height > residentCache.getBudget()) {
+            // keeping it would undo the savings of indexed storage, the caller gets an uncached copy.
+            if (oversizedWarnings.add(name)) {
+                DebugLogger.w("[SpriteManager] Region of " + name + " (" + width + "x" + height + ") is larger than the resident budget,"
+                        + " it is expanded again on every request. Use getImageSection or raise the budget.");
+            }
+            return image;
+        }
+
+        residentCache.put(key, image);
+        // the image may have been replaced or removed on another thread meanwhile.
+        if (indexedImageMap.get(name) != indexed) {
+            residentCache.remove(key);
+        }
+        return image;
+    }
+
+    /**
+     * Get the mip chain of a texture, generating it if needed.
+     *
+     * @param texture the texture.
+     * @return the mip chain for the texture.
+     */
+    public Mipmap getMipmap(BufferedImage texture) {
+        return mipmaps.computeIfAbsent(texture, Mipmap::generate);
+    }
+
+    /**
+     * Generate mip chains for every image that was added, so nothing is generated while drawing.
+     */
+    public void generateMipmaps() {
+        bufferedImageMap.values().forEach(this::getMipmap);
+    }
+
+    /**
+     * Drop all generated mip chains.
+     */
+    public void clearMipmaps() {
+        mipmaps.clear();
+    }
+
+    /**
+     * Get the collision mask of a texture, generating it if needed. For a region of a sheet,
+     * pass the section from {@link #getSectionAt(BufferedImage, int, int, int, int)}.
+     *
+     * @param texture the texture.
+     * @return the collision mask for the texture.
+     */
+    public CollisionMask getCollisionMask(BufferedImage texture) {
+        return collisionMasks.computeIfAbsent(texture, CollisionMask::fromImage);
+    }
+
+    /**
+     * Generate collision masks for every image that was added, so nothing is generated during a tick.
+     */
+    public void generateCollisionMasks() {
+        bufferedImageMap.values().forEach(this::getCollisionMask);
+    }
+
+    /**
+     * Drop all generated collision masks.
+     */
+    public void clearCollisionMasks() {
+        collisionMasks.clear();
+    }
+
+    /**
+     * Get a color transformed variant of an image. Variants are generated once and cached until evicted by the budget,
+     * see {@link #setTransformBudget(long)}.
+     *
+     * @param source    the image.
+     * @param transform the transform to apply.
+     * @return the transformed image.
+     */
+    public BufferedImage getTransformed(BufferedImage source, ColorTransform transform) {
+        TransformKey key = new TransformKey(source, transform);
+        BufferedImage image = transformCache.get(key);
+        if (image != null) {
+            return image;
+        }
+
+        int width = source.getWidth();
+        int height = source.getHeight();
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        // copy the source straight into the backing array and transform it in place.
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        source.getRGB(0, 0, width, height, pixels, 0, width);
+        transform.apply(pixels, width * height);
+
+        transformCache.put(key, image);
+        return image;
+    }
+
+    /**
+     * Set the maximum amount of pixels color transformed variants may use, the least recently used variants are evicted first.
+     *
+     * @param pixels the budget in pixels.
+     */
+    public void setTransformBudget(long pixels) {
+        transformCache.setBudget(pixels);
+    }
+
+    /**
+     * @return the cache of color transformed variants.
+     */
+    public ImageCache<?> getTransformCache() {
+        return transformCache;
+    }
+
     /**
      * Get multiple images from an image.
      *
@@ -155,4 +520,68 @@ public class SpriteManager {
         return tiles.toArray(new Tile[0]);
     }
 
+    /**
+     * Identifies a transformed variant, source images are compared by reference.
+     */
+    private static final class TransformKey {
+        private final BufferedImage source;
+        private final ColorTransform transform;
+
+        private TransformKey(BufferedImage source, ColorTransform transform) {
+            this.source = source;
+            this.transform = transform;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TransformKey)) {
+                return false;
+            }
+
+            TransformKey other = (TransformKey) obj;
+            return source == other.source && transform.equals(other.transform);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(source) + transform.hashCode();
+        }
+    }
+
+    /**
+     * Identifies an expanded region of an indexed image.
+     */
+    private static final class RegionKey {
+        private final String name;
+        private final int x, y, width, height;
+
+        private RegionKey(String name, int x, int y, int width, int height) {
+            this.name = name;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RegionKey)) {
+                return false;
+            }
+
+            RegionKey other = (RegionKey) obj;
+            return x == other.x && y == other.y && width == other.width && height == other.height && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = name.hashCode();
+            result = 31 * result + x;
+            result = 31 * result + y;
+            result = 31 * result + width;
+            result = 31 * result + height;
+            return result;
+        }
+    }
+
 }
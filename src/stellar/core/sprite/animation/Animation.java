@@ -0,0 +1,104 @@
+package stellar.core.sprite.animation;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * An immutable sequence of frames and how many ticks each one is shown for.
+ * Animations hold no playback state, that lives in an {@link Animator} so a single animation can be played any amount of times.
+ */
+public final class Animation {
+
+    /**
+     * What happens after the last frame.
+     */
+    public enum LoopMode {
+        /**
+         * Stop on the last frame.
+         */
+        ONCE,
+        /**
+         * Start over from the first frame.
+         */
+        LOOP,
+        /**
+         * Play backwards to the first frame, then forwards again.
+         */
+        PING_PONG
+    }
+
+    final BufferedImage[] frames;
+    final int[] durations;
+    final LoopMode mode;
+
+    /**
+     * @param frames   the frames, for example from SpriteManager#getImages.
+     * @param duration how many ticks each frame is shown for.
+     * @param mode     what happens after the last frame.
+     */
+    public Animation(BufferedImage[] frames, int duration, LoopMode mode) {
+        this(frames, filled(frames.length, duration), mode);
+    }
+
+    /**
+     * @param frames    the frames, for example from SpriteManager#getImages.
+     * @param durations how many ticks each frame is shown for, one per frame.
+     * @param mode      what happens after the last frame.
+     */
+    public Animation(BufferedImage[] frames, int[] durations, LoopMode mode) {
+        if (frames.length == 0) {
+            throw new IllegalArgumentException("An animation needs at least one frame.");
+        }
+
+        if (frames.length != durations.length) {
+            throw new IllegalArgumentException("Expected " + frames.length + " durations, got " + durations.length);
+        }
+
+        for (int duration : durations) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException("Frame durations must be at least 1 tick.");
+            }
+        }
+
+        this.frames = frames.clone();
+        this.durations = durations.clone();
+        this.mode = mode;
+    }
+
+    private static int[] filled(int length, int value) {
+        int[] array = new int[length];
+        Arrays.fill(array, value);
+        return array;
+    }
+
+    /**
+     * @param frame the frame index.
+     * @return the image of the frame.
+     */
+    public BufferedImage getFrame(int frame) {
+        return frames[frame];
+    }
+
+    /**
+     * @param frame the frame index.
+     * @return how many ticks the frame is shown for.
+     */
+    public int getDuration(int frame) {
+        return durations[frame];
+    }
+
+    /**
+     * @return the amount of frames.
+     */
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    /**
+     * @return the loop mode.
+     */
+    public LoopMode getMode() {
+        return mode;
+    }
+
+}
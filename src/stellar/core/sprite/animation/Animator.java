@@ -0,0 +1,246 @@
+package stellar.core.sprite.animation;
+
+import com.sun.istack.internal.Nullable;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Advances every playing animation from one shared tick.
+ * <p>
+ * Playback state is kept in primitive arrays indexed by a handle returned from {@link #play(Animation)}.
+ * Anything that should animate in lockstep (for example every water tile) can share one handle, so thousands of
+ * tiles cost one state update per tick. Ticking allocates nothing.
+ * <p>
+ * A handle goes stale once its animation is stopped, even if its slot is reused by a later call to
+ * {@link #play(Animation)}. Stale handles are ignored, so they are always safe to stop. Handles are never 0, it can be
+ * used for "no animation".
+ * <p>
+ * This class is not thread safe, it is meant to be used from the game loop.
+ */
+public final class Animator {
+
+    private static final int ACTIVE = 1, PAUSED = 2, FINISHED = 4;
+    private static final int NONE = -1;
+
+    private Animation[] animations;
+    private int[] frame;
+    private int[] remaining;
+    private int[] step;
+    private int[] flags;
+    private int[] generations;
+
+    // the highest handle ever used + 1.
+    private int count;
+    private int[] freeHandles;
+    private int freeCount;
+
+    public Animator() {
+        this(64);
+    }
+
+    /**
+     * @param capacity the initial amount of handles.
+     */
+    public Animator(int capacity) {
+        capacity = Math.max(1, capacity);
+        animations = new Animation[capacity];
+        frame = new int[capacity];
+        remaining = new int[capacity];
+        step = new int[capacity];
+        flags = new int[capacity];
+        generations = new int[capacity];
+        freeHandles = new int[capacity];
+    }
+
+    /**
+     * Start playing an animation.
+     *
+     * @param animation the animation.
+     * @return the handle of the playback state.
+     */
+    public long play(Animation animation) {
+        int index;
+        if (freeCount > 0) {
+            index = freeHandles[--freeCount];
+        } else {
+            if (count == animations.length) {
+                grow();
+            }
+            // generations start at 1 so a handle is never 0.
+            generations[count] = 1;
+            index = count++;
+        }
+
+        animations[index] = animation;
+        flags[index] = ACTIVE;
+        reset(index);
+        return ((long) generations[index] << 32) | index;
+    }
+
+    /**
+     * Stop an animation and release its handle. Does nothing if the handle is stale.
+     *
+     * @param handle the handle.
+     */
+    public void stop(long handle) {
+        int index = resolve(handle);
+        if (index == NONE) {
+            return;
+        }
+
+        animations[index] = null;
+        flags[index] = 0;
+        generations[index] = generations[index] == Integer.MAX_VALUE ? 1 : generations[index] + 1;
+        freeHandles[freeCount++] = index;
+    }
+
+    /**
+     * Restart an animation from its first frame. Does nothing if the handle is stale.
+     *
+     * @param handle the handle.
+     */
+    public void restart(long handle) {
+        int index = resolve(handle);
+        if (index != NONE) {
+            reset(index);
+        }
+    }
+
+    private void reset(int index) {
+        frame[index] = 0;
+        step[index] = 1;
+        remaining[index] = animations[index].durations[0];
+        flags[index] &= ~FINISHED;
+    }
+
+    /**
+     * Pause or resume an animation. Does nothing if the handle is stale.
+     *
+     * @param handle the handle.
+     * @param paused true to pause the animation.
+     */
+    public void setPaused(long handle, boolean paused) {
+        int index = resolve(handle);
+        if (index != NONE) {
+            flags[index] = paused ? flags[index] | PAUSED : flags[index] & ~PAUSED;
+        }
+    }
+
+    /**
+     * Advance every playing animation by one tick.
+     */
+    public void tick() {
+        final int[] flags = this.flags, remaining = this.remaining;
+        for (int i = 0; i < count; i++) {
+            if (flags[i] != ACTIVE || --remaining[i] > 0) {
+                continue;
+            }
+            advance(i);
+        }
+    }
+
+    /**
+     * Move to the next frame.
+     */
+    private void advance(int i) {
+        Animation animation = animations[i];
+        int last = animation.frames.length - 1;
+        int next = frame[i] + step[i];
+
+        if (next > last || next < 0) {
+            switch (animation.mode) {
+                case ONCE:
+                    next = last;
+                    flags[i] |= FINISHED;
+                    break;
+                case LOOP:
+                    next = 0;
+                    break;
+                case PING_PONG:
+                    step[i] = -step[i];
+                    next = last == 0 ? 0 : frame[i] + step[i];
+                    break;
+            }
+        }
+
+        frame[i] = next;
+        remaining[i] = animation.durations[next];
+    }
+
+    /**
+     * @param handle the handle.
+     * @return the image of the current frame, or null if the handle is stale.
+     */
+    @Nullable
+    public BufferedImage getFrame(long handle) {
+        int index = resolve(handle);
+        return index == NONE ? null : animations[index].frames[frame[index]];
+    }
+
+    /**
+     * @param handle the handle.
+     * @return the index of the current frame, or -1 if the handle is stale.
+     */
+    public int getFrameIndex(long handle) {
+        int index = resolve(handle);
+        return index == NONE ? -1 : frame[index];
+    }
+
+    /**
+     * @param handle the handle.
+     * @return if a {@link Animation.LoopMode#ONCE} animation has reached its last frame, false if the handle is stale.
+     */
+    public boolean isFinished(long handle) {
+        int index = resolve(handle);
+        return index != NONE && (flags[index] & FINISHED) != 0;
+    }
+
+    /**
+     * @param handle the handle.
+     * @return true if the animation has not been stopped.
+     */
+    public boolean isPlaying(long handle) {
+        return resolve(handle) != NONE;
+    }
+
+    /**
+     * @param handle the handle.
+     * @return the animation being played, or null if the handle is stale.
+     */
+    @Nullable
+    public Animation getAnimation(long handle) {
+        int index = resolve(handle);
+        return index == NONE ? null : animations[index];
+    }
+
+    /**
+     * @return the index of a playing animation, or NONE if the handle is stale.
+     */
+    private int resolve(long handle) {
+        int index = (int) handle;
+        if (index < 0 || index >= count || generations[index] != (int) (handle >>> 32) || flags[index] == 0) {
+            return NONE;
+        }
+        return index;
+    }
+
+    /**
+     * @return the amount of handles in use.
+     */
+    public int size() {
+        return count - freeCount;
+    }
+
+    private void grow() {
+        int capacity = animations.length << 1;
+        animations = Arrays.copyOf(animations, capacity);
+        frame = Arrays.copyOf(frame, capacity);
+        remaining = Arrays.copyOf(remaining, capacity);
+        step = Arrays.copyOf(step, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        generations = Arrays.copyOf(generations, capacity);
+        freeHandles = Arrays.copyOf(freeHandles, capacity);
+    }
+
+}
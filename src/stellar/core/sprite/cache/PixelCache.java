@@ -0,0 +1,225 @@
+package stellar.core.sprite.cache;
+
+import com.sun.istack.internal.Nullable;
+import stellar.log.DebugLogger;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+/**
+ * An on-disk cache of decoded ARGB rasters, used to skip image decoding on warm starts.
+ * <p>
+ * Every entry is keyed by the source (a path or pack entry), its size and its modification time. If any of those change the
+ * entry is treated as missing and rewritten after the next decode.
+ * <p>
+ * Entries can be loaded and stored from several threads at once.
+ * <p>
+ * Layout (native byte order):
+ * <pre>
+ * int magic, int version, long sourceSize, long sourceModified, int keyLength, int width, int height,
+ * byte[] key (UTF-8), padding to a multiple of 4, int[] pixels
+ * </pre>
+ */
+public final class PixelCache {
+
+    /**
+     * "STPC"
+     */
+    private static final int MAGIC = 0x53545043;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 36;
+
+    private final Path directory;
+
+    /**
+     * @param directory the directory to store cached rasters in, created if needed.
+     * @throws IOException if the directory could not be created.
+     */
+    public PixelCache(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    /**
+     * Load a cached raster.
+     *
+     * @param key            the source key, usually the path of the source.
+     * @param sourceSize     the size of the source in bytes.
+     * @param sourceModified the last modification time of the source.
+     * @return the cached image, or null if there is no valid entry.
+     */
+    @Nullable
+    public BufferedImage load(String key, long sourceSize, long sourceModified) {
+        Path file = fileFor(key);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+
+            // a magic mismatch also catches files written on a machine with another byte order.
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || buffer.getLong(8) != sourceSize || buffer.getLong(16) != sourceModified) {
+                return null;
+            }
+
+            int keyLength = buffer.getInt(24);
+            int width = buffer.getInt(28);
+            int height = buffer.getInt(32);
+            int pixelOffset = pixelOffset(keyLength);
+            if (width <= 0 || height <= 0 || pixelOffset + (long) width * height * 4 != size) {
+                return null;
+            }
+
+            // make sure this entry is not a hash collision.
+            byte[] keyBytes = new byte[keyLength];
+            buffer.position(HEADER_SIZE);
+            buffer.get(keyBytes);
+            if (!key.equals(new String(keyBytes, StandardCharsets.UTF_8))) {
+                return null;
+            }
+
+            // copy the raster straight into the image's backing array.
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            buffer.position(pixelOffset);
+            buffer.asIntBuffer().get(pixels);
+            return image;
+        } catch (IOException exception) {
+            DebugLogger.w("[PixelCache] Could not read cached raster for " + key + ": " + exception.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Store a decoded raster.
+     *
+     * @param key            the source key, usually the path of the source.
+     * @param sourceSize     the size of the source in bytes.
+     * @param sourceModified the last modification time of the source.
+     * @param image          the decoded image.
+     */
+    public void store(String key, long sourceSize, long sourceModified, BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int pixelOffset = pixelOffset(keyBytes.length);
+
+        int[] pixels;
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        } else {
+            pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(pixelOffset + width * height * 4).order(ByteOrder.nativeOrder());
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(sourceSize).putLong(sourceModified);
+        buffer.putInt(keyBytes.length).putInt(width).putInt(height);
+        buffer.put(keyBytes);
+        buffer.position(pixelOffset);
+        buffer.asIntBuffer().put(pixels, 0, width * height);
+        buffer.clear();
+
+        // write to a temporary file first so a crash never leaves a half written entry behind. The temporary file is
+        // unique so threads storing the same entry at once don't write into each other's file.
+        Path file = fileFor(key);
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            DebugLogger.w("[PixelCache] Could not write cached raster for " + key + ": " + exception.getMessage());
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Convert an image to the type cached rasters are loaded as, so an image behaves the same whether it was
+     * decoded or read from the cache.
+     *
+     * @param image the image.
+     * @return the image if it already is TYPE_INT_ARGB, otherwise a TYPE_INT_ARGB copy.
+     */
+    public static BufferedImage toArgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return image;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage converted = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) converted.getRaster().getDataBuffer()).getData();
+        image.getRGB(0, 0, width, height, pixels, 0, width);
+        return converted;
+    }
+
+    /**
+     * Remove every cached raster.
+     */
+    public void clear() {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> path.toString().endsWith(".argb")).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException exception) {
+                    DebugLogger.w("[PixelCache] Could not delete " + path);
+                }
+            });
+        } catch (IOException exception) {
+            DebugLogger.w("[PixelCache] Could not clear " + directory);
+        }
+    }
+
+    /**
+     * @return the directory rasters are stored in.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param key the source key.
+     * @return the cache file for the key.
+     */
+    private Path fileFor(String key) {
+        // 64-bit FNV-1a, collisions are caught by the key stored in the entry.
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return directory.resolve(Long.toHexString(hash) + ".argb");
+    }
+
+    private static int pixelOffset(int keyLength) {
+        return (HEADER_SIZE + keyLength + 3) & ~3;
+    }
+
+}
@@ -0,0 +1,215 @@
+package stellar.core.sprite.color;
+
+import java.util.Arrays;
+
+/**
+ * An immutable per-pixel color transform, such as a tint, brightness change, fade or palette swap.
+ * Transforms can be chained with {@link #then(ColorTransform)} and are comparable with equals so they can be used as cache keys.
+ */
+public final class ColorTransform {
+
+    private enum Type {
+        TINT, BRIGHTNESS, ALPHA, PALETTE_SWAP
+    }
+
+    private final Type type;
+    private final int color;
+    private final float amount;
+    // sorted by from so lookups can binary search.
+    private final int[] from, to;
+    private final ColorTransform next;
+    // cached since transforms are hashed on every cache lookup.
+    private int hash;
+
+    private ColorTransform(Type type, int color, float amount, int[] from, int[] to, ColorTransform next) {
+        this.type = type;
+        this.color = color;
+        this.amount = amount;
+        this.from = from;
+        this.to = to;
+        this.next = next;
+    }
+
+    /**
+     * Blend every pixel towards a color, keeping its alpha.
+     *
+     * @param rgb      the color to blend towards.
+     * @param strength how much to blend, 0 to 1.
+     * @return the transform.
+     */
+    public static ColorTransform tint(int rgb, float strength) {
+        return new ColorTransform(Type.TINT, rgb & 0xFFFFFF, clamp(strength, 0, 1), null, null, null);
+    }
+
+    /**
+     * Multiply the color channels of every pixel.
+     *
+     * @param factor the factor, 1 leaves the image unchanged.
+     * @return the transform.
+     */
+    public static ColorTransform brightness(float factor) {
+        return new ColorTransform(Type.BRIGHTNESS, 0, Math.max(0, factor), null, null, null);
+    }
+
+    /**
+     * Multiply the alpha of every pixel.
+     *
+     * @param factor the factor, 0 to 1.
+     * @return the transform.
+     */
+    public static ColorTransform alpha(float factor) {
+        return new ColorTransform(Type.ALPHA, 0, clamp(factor, 0, 1), null, null, null);
+    }
+
+    /**
+     * Replace colors, for example to create team colors. Colors are compared including alpha.
+     *
+     * @param from the ARGB colors to replace.
+     * @param to   the ARGB colors to replace them with, one per color in from.
+     * @return the transform.
+     */
+    public static ColorTransform paletteSwap(int[] from, int[] to) {
+        if (from.length != to.length) {
+            throw new IllegalArgumentException("Expected " + from.length + " replacement colors, got " + to.length);
+        }
+
+        // sort both arrays by the source color.
+        long[] pairs = new long[from.length];
+        for (int i = 0; i < from.length; i++) {
+            pairs[i] = ((long) from[i] << 32) | (to[i] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(pairs);
+
+        int[] sortedFrom = new int[pairs.length];
+        int[] sortedTo = new int[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            sortedFrom[i] = (int) (pairs[i] >> 32);
+            sortedTo[i] = (int) pairs[i];
+        }
+        return new ColorTransform(Type.PALETTE_SWAP, 0, 0, sortedFrom, sortedTo, null);
+    }
+
+    /**
+     * @param after the transform to apply after this one.
+     * @return a transform that applies this one and then the other.
+     */
+    public ColorTransform then(ColorTransform after) {
+        return new ColorTransform(type, color, amount, from, to, next == null ? after : next.then(after));
+    }
+
+    /**
+     * Apply the transform to ARGB pixels in place.
+     *
+     * @param pixels the pixels.
+     * @param length the amount of pixels.
+     */
+    public void apply(int[] pixels, int length) {
+        switch (type) {
+            case TINT:
+                applyTint(pixels, length);
+                break;
+            case BRIGHTNESS:
+                applyBrightness(pixels, length);
+                break;
+            case ALPHA:
+                applyAlpha(pixels, length);
+                break;
+            case PALETTE_SWAP:
+                applyPaletteSwap(pixels, length);
+                break;
+        }
+
+        if (next != null) {
+            next.apply(pixels, length);
+        }
+    }
+
+    private void applyTint(int[] pixels, int length) {
+        int strength = (int) (amount * 256);
+        int inverse = 256 - strength;
+        int tr = (color >> 16 & 0xFF) * strength, tg = (color >> 8 & 0xFF) * strength, tb = (color & 0xFF) * strength;
+
+        for (int i = 0; i < length; i++) {
+            int p = pixels[i];
+            int r = ((p >> 16 & 0xFF) * inverse + tr) >> 8;
+            int g = ((p >> 8 & 0xFF) * inverse + tg) >> 8;
+            int b = ((p & 0xFF) * inverse + tb) >> 8;
+            pixels[i] = (p & 0xFF000000) | r << 16 | g << 8 | b;
+        }
+    }
+
+    private void applyBrightness(int[] pixels, int length) {
+        int factor = (int) (amount * 256);
+        for (int i = 0; i < length; i++) {
+            int p = pixels[i];
+            int r = Math.min(255, ((p >> 16 & 0xFF) * factor) >> 8);
+            int g = Math.min(255, ((p >> 8 & 0xFF) * factor) >> 8);
+            int b = Math.min(255, ((p & 0xFF) * factor) >> 8);
+            pixels[i] = (p & 0xFF000000) | r << 16 | g << 8 | b;
+        }
+    }
+
+    private void applyAlpha(int[] pixels, int length) {
+        int factor = (int) (amount * 256);
+        for (int i = 0; i < length; i++) {
+            int p = pixels[i];
+            pixels[i] = (((p >>> 24) * factor) >> 8) << 24 | (p & 0xFFFFFF);
+        }
+    }
+
+    private void applyPaletteSwap(int[] pixels, int length) {
+        int last = 0, lastResult = 0;
+        boolean hasLast = false;
+        for (int i = 0; i < length; i++) {
+            int p = pixels[i];
+            // runs of the same color are common in pixel art.
+            if (hasLast && p == last) {
+                pixels[i] = lastResult;
+                continue;
+            }
+
+            int index = Arrays.binarySearch(from, p);
+            last = p;
+            lastResult = index >= 0 ? to[index] : p;
+            hasLast = true;
+            pixels[i] = lastResult;
+        }
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+
+        if (!(obj instanceof ColorTransform)) {
+            return false;
+        }
+
+        ColorTransform other = (ColorTransform) obj;
+        return type == other.type && color == other.color && Float.compare(amount, other.amount) == 0
+                && Arrays.equals(from, other.from) && Arrays.equals(to, other.to)
+                && (next == null ? other.next == null : next.equals(other.next));
+    }
+
+    @Override
+    public int hashCode() {
+        if (hash != 0) {
+            return hash;
+        }
+
+        int result = type.hashCode();
+        result = 31 * result + color;
+        result = 31 * result + Float.floatToIntBits(amount);
+        result = 31 * result + Arrays.hashCode(from);
+        result = 31 * result + Arrays.hashCode(to);
+        result = 31 * result + (next == null ? 0 : next.hashCode());
+        hash = result;
+        return result;
+    }
+
+}
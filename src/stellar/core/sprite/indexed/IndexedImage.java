@@ -0,0 +1,117 @@
+package stellar.core.sprite.indexed;
+
+import com.sun.istack.internal.Nullable;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * An image stored as one byte per pixel plus a palette, a quarter of the size of an ARGB image.
+ * Indexed images can't be drawn directly, regions are expanded to ARGB when they are needed.
+ */
+public final class IndexedImage {
+
+    private final int width, height;
+    private final byte[] indices;
+    private final Palette palette;
+
+    private IndexedImage(int width, int height, byte[] indices, Palette palette) {
+        this.width = width;
+        this.height = height;
+        this.indices = indices;
+        this.palette = palette;
+    }
+
+    /**
+     * Convert an image. Colors are added to the palette as needed, if it runs out of colors the colors added by this
+     * image are removed again so the palette is left as it was.
+     *
+     * @param image   the image.
+     * @param palette the palette to use, which may be shared with other images.
+     * @return the indexed image, or null if the palette ran out of colors.
+     */
+    @Nullable
+    public static IndexedImage fromImage(BufferedImage image, Palette palette) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] indices = new byte[width * height];
+
+        int mark = palette.size();
+        int[] row = new int[width];
+        int last = 0, lastIndex = -1;
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int argb = row[x];
+                // runs of the same color are common in pixel art.
+                if (lastIndex < 0 || argb != last) {
+                    lastIndex = palette.indexOf(argb);
+                    if (lastIndex < 0) {
+                        palette.truncate(mark);
+                        return null;
+                    }
+                    last = argb;
+                }
+                indices[y * width + x] = (byte) lastIndex;
+            }
+        }
+        return new IndexedImage(width, height, indices, palette);
+    }
+
+    /**
+     * @return the whole image expanded to ARGB.
+     */
+    public BufferedImage expand() {
+        return expand(0, 0, width, height);
+    }
+
+    /**
+     * Expand a region to ARGB.
+     *
+     * @param x      the origin X.
+     * @param y      the origin Y.
+     * @param width  the width of the region.
+     * @param height the height of the region.
+     * @return a new image of the region.
+     */
+    public BufferedImage expand(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || width <= 0 || height <= 0 || x + width > this.width || y + height > this.height) {
+            throw new IllegalArgumentException("Region " + x + "," + y + " " + width + "x" + height + " is outside of the image.");
+        }
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int[] colors = palette.colors();
+
+        for (int row = 0; row < height; row++) {
+            int source = (y + row) * this.width + x;
+            int destination = row * width;
+            for (int column = 0; column < width; column++) {
+                pixels[destination + column] = colors[indices[source + column] & 0xFF];
+            }
+        }
+        return image;
+    }
+
+    /**
+     * @return the width.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the palette.
+     */
+    public Palette getPalette() {
+        return palette;
+    }
+
+}
@@ -0,0 +1,102 @@
+package stellar.core.sprite.indexed;
+
+import java.util.Arrays;
+
+/**
+ * Up to 256 ARGB colors that can be shared between indexed images.
+ */
+public final class Palette {
+
+    public static final int MAX_COLORS = 256;
+
+    private final int[] colors = new int[MAX_COLORS];
+    private int size;
+
+    // open addressing color -> index + 1, 0 marks an empty slot. Only used while building images.
+    private final int[] lookupColors = new int[MAX_COLORS * 2];
+    private final int[] lookupIndices = new int[MAX_COLORS * 2];
+
+    /**
+     * Get the index of a color, adding it if needed.
+     *
+     * @param argb the color.
+     * @return the index of the color or -1 if the palette is full.
+     */
+    public int indexOf(int argb) {
+        int mask = lookupColors.length - 1;
+        int slot = mix(argb) & mask;
+        while (lookupIndices[slot] != 0) {
+            if (lookupColors[slot] == argb) {
+                return lookupIndices[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == MAX_COLORS) {
+            return -1;
+        }
+
+        colors[size] = argb;
+        lookupColors[slot] = argb;
+        lookupIndices[slot] = ++size;
+        return size - 1;
+    }
+
+    /**
+     * Drop every color added after the palette had a given size, used to undo a conversion that ran out of colors.
+     *
+     * @param size the size to go back to.
+     */
+    void truncate(int size) {
+        if (size >= this.size) {
+            return;
+        }
+
+        this.size = size;
+        Arrays.fill(lookupIndices, 0);
+        int mask = lookupColors.length - 1;
+        for (int index = 0; index < size; index++) {
+            int slot = mix(colors[index]) & mask;
+            while (lookupIndices[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            lookupColors[slot] = colors[index];
+            lookupIndices[slot] = index + 1;
+        }
+    }
+
+    private static int mix(int value) {
+        value *= 0x9E3779B9;
+        return value ^ (value >>> 16);
+    }
+
+    /**
+     * @param index the index.
+     * @return the color at the index.
+     */
+    public int getColor(int index) {
+        return colors[index];
+    }
+
+    /**
+     * @return the amount of colors.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a copy of the colors.
+     */
+    public int[] getColors() {
+        return Arrays.copyOf(colors, size);
+    }
+
+    /**
+     * @return the backing color array, indices at or above {@link #size()} are unused.
+     */
+    int[] colors() {
+        return colors;
+    }
+
+}
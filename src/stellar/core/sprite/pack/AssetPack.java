@@ -0,0 +1,214 @@
+package stellar.core.sprite.pack;
+
+import com.sun.istack.internal.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A read-only, memory-mapped asset archive created by {@link AssetPackWriter}.
+ * <p>
+ * Layout (big endian):
+ * <pre>
+ * header:  int magic, int version, int entryCount, int alignment
+ * index:   entryCount x (short nameLength, byte[] name (UTF-8), long offset, int length), sorted by name
+ * blobs:   each blob starts at a multiple of alignment.
+ * </pre>
+ * The whole file is mapped once when the pack is opened, entries are handed out as zero-copy slices of the mapping.
+ */
+public final class AssetPack {
+
+    /**
+     * "STPK"
+     */
+    public static final int MAGIC = 0x5354504B;
+    public static final int VERSION = 1;
+
+    private final String path;
+    private final long lastModified;
+    private final MappedByteBuffer buffer;
+
+    private final String[] names;
+    private final long[] offsets;
+    private final int[] lengths;
+
+    private AssetPack(String path, long lastModified, MappedByteBuffer buffer, String[] names, long[] offsets, int[] lengths) {
+        this.path = path;
+        this.lastModified = lastModified;
+        this.buffer = buffer;
+        this.names = names;
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    /**
+     * Open and map a pack.
+     *
+     * @param file the pack file.
+     * @return the opened pack.
+     * @throws IOException if the file could not be read or is not a valid pack.
+     */
+    public static AssetPack open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Asset pack " + file + " is larger than 2GB.");
+            }
+
+            // the mapping stays valid after the channel is closed.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+
+            if (size < 16 || buffer.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not an asset pack.");
+            }
+
+            int version = buffer.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported asset pack version " + version + " in " + file);
+            }
+
+            int count = buffer.getInt(8);
+            // every index entry takes at least 14 bytes.
+            if (count < 0 || count > (size - 16) / 14) {
+                throw new IOException("Invalid entry count " + count + " in " + file);
+            }
+
+            String[] names = new String[count];
+            long[] offsets = new long[count];
+            int[] lengths = new int[count];
+
+            // read the index, names are decoded once here so lookups never touch the mapping.
+            int position = 16;
+            byte[] nameBytes = new byte[256];
+            for (int i = 0; i < count; i++) {
+                if (position + 2 > size) {
+                    throw new IOException("The index of " + file + " is truncated.");
+                }
+                int nameLength = buffer.getShort(position) & 0xFFFF;
+                position += 2;
+                if (position + nameLength + 12 > size) {
+                    throw new IOException("The index of " + file + " is truncated.");
+                }
+                if (nameBytes.length < nameLength) {
+                    nameBytes = new byte[nameLength];
+                }
+
+                for (int b = 0; b < nameLength; b++) {
+                    nameBytes[b] = buffer.get(position + b);
+                }
+                names[i] = new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8);
+                position += nameLength;
+
+                offsets[i] = buffer.getLong(position);
+                lengths[i] = buffer.getInt(position + 8);
+                position += 12;
+
+                if (offsets[i] < 0 || lengths[i] < 0 || offsets[i] > size - lengths[i]) {
+                    throw new IOException("Entry " + names[i] + " in " + file + " points outside of the pack.");
+                }
+            }
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+            return new AssetPack(file.toString(), lastModified, buffer, names, offsets, lengths);
+        }
+    }
+
+    /**
+     * Normalize a resource path to the form used for entry names.
+     *
+     * @param name the name or path.
+     * @return the name with forward slashes and without a leading "./".
+     */
+    public static String normalize(String name) {
+        String normalized = name.replace('\\', '/');
+        while (normalized.startsWith("./")) {
+            normalized = normalized.substring(2);
+        }
+        return normalized;
+    }
+
+    /**
+     * @param name the name of the entry.
+     * @return the index of the entry or a negative value if not found.
+     */
+    public int indexOf(String name) {
+        return Arrays.binarySearch(names, normalize(name));
+    }
+
+    /**
+     * @param name the name of the entry.
+     * @return if this pack contains the entry.
+     */
+    public boolean contains(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    /**
+     * @param name the name of the entry.
+     * @return a read-only zero-copy view of the entry, or null if this pack does not contain it.
+     */
+    @Nullable
+    public ByteBuffer find(String name) {
+        int index = indexOf(name);
+        return index < 0 ? null : get(index);
+    }
+
+    /**
+     * @param index the index of the entry.
+     * @return a read-only zero-copy view of the entry.
+     */
+    public ByteBuffer get(int index) {
+        // duplicate so concurrent readers never share position/limit.
+        ByteBuffer view = buffer.duplicate();
+        int start = (int) offsets[index];
+        view.limit(start + lengths[index]);
+        view.position(start);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the amount of entries in this pack.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @param index the index of the entry.
+     * @return the name of the entry.
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * @param index the index of the entry.
+     * @return the length in bytes of the entry.
+     */
+    public int getLength(int index) {
+        return lengths[index];
+    }
+
+    /**
+     * @return the path this pack was opened from.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the modification time of the pack file when it was opened.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+}
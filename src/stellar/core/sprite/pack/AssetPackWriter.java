@@ -0,0 +1,197 @@
+package stellar.core.sprite.pack;
+
+import stellar.log.DebugLogger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Builds {@link AssetPack} files.
+ * <p>
+ * Entries are named by their path as given, so packing the directory "res" creates entries like "res/player.png",
+ * which is the same path you would pass to SpriteManager#loadImage.
+ * <p>
+ * Can also be used from the command line: {@code AssetPackWriter <output> <file or directory>...}
+ */
+public final class AssetPackWriter {
+
+    /**
+     * The default blob alignment.
+     */
+    public static final int DEFAULT_ALIGNMENT = 16;
+
+    // sorted by name, the reader binary searches the index.
+    private final Map<String, Path> entries = new TreeMap<>();
+    private final int alignment;
+
+    public AssetPackWriter() {
+        this(DEFAULT_ALIGNMENT);
+    }
+
+    /**
+     * @param alignment the alignment of each blob in bytes, must be a power of two.
+     */
+    public AssetPackWriter(int alignment) {
+        if (alignment <= 0 || (alignment & (alignment - 1)) != 0) {
+            throw new IllegalArgumentException("Alignment must be a power of two: " + alignment);
+        }
+        this.alignment = alignment;
+    }
+
+    /**
+     * Add a file.
+     *
+     * @param name the name of the entry.
+     * @param file the file to add.
+     */
+    public void add(String name, Path file) {
+        String normalized = AssetPack.normalize(name);
+        if (normalized.getBytes(StandardCharsets.UTF_8).length > 0xFFFF) {
+            throw new IllegalArgumentException("Entry name is too long: " + name);
+        }
+
+        if (entries.put(normalized, file) != null) {
+            DebugLogger.w("[AssetPackWriter] Duplicate entry " + normalized + ", replacing it with " + file);
+        }
+    }
+
+    /**
+     * Add a file, named by its path.
+     *
+     * @param file the file to add.
+     */
+    public void add(Path file) {
+        add(file.toString(), file);
+    }
+
+    /**
+     * Add every file in a directory and its sub-directories, named by their path.
+     *
+     * @param directory the directory.
+     * @throws IOException if the directory could not be walked.
+     */
+    public void addDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.filter(Files::isRegularFile).forEach(this::add);
+        }
+    }
+
+    /**
+     * @return the amount of entries added.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Write the pack.
+     *
+     * @param output the file to write to.
+     * @throws IOException if any entry could not be read or the output could not be written.
+     */
+    public void write(Path output) throws IOException {
+        int count = entries.size();
+        byte[][] names = new byte[count][];
+        long[] lengths = new long[count];
+
+        // compute the index size so we know where the first blob starts.
+        long indexEnd = 16;
+        int i = 0;
+        for (Map.Entry<String, Path> entry : entries.entrySet()) {
+            names[i] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            lengths[i] = Files.size(entry.getValue());
+            if (lengths[i] > Integer.MAX_VALUE) {
+                throw new IOException("Entry " + entry.getKey() + " is too large.");
+            }
+            indexEnd += 2 + names[i].length + 12;
+            i++;
+        }
+
+        // lay out the blobs.
+        long[] offsets = new long[count];
+        long position = align(indexEnd);
+        for (i = 0; i < count; i++) {
+            offsets[i] = position;
+            position = align(position + lengths[i]);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output), 1 << 16))) {
+            out.writeInt(AssetPack.MAGIC);
+            out.writeInt(AssetPack.VERSION);
+            out.writeInt(count);
+            out.writeInt(alignment);
+
+            for (i = 0; i < count; i++) {
+                out.writeShort(names[i].length);
+                out.write(names[i]);
+                out.writeLong(offsets[i]);
+                out.writeInt((int) lengths[i]);
+            }
+
+            long written = indexEnd;
+            i = 0;
+            for (Path file : entries.values()) {
+                written = pad(out, written, offsets[i]);
+                long copied = Files.copy(file, out);
+                if (copied != lengths[i]) {
+                    throw new IOException("File " + file + " changed while packing.");
+                }
+                written += copied;
+                i++;
+            }
+        }
+    }
+
+    /**
+     * @param value the value.
+     * @return the value rounded up to the alignment.
+     */
+    private long align(long value) {
+        return (value + alignment - 1) & -alignment;
+    }
+
+    /**
+     * Write zeros until the target is reached.
+     */
+    private static long pad(OutputStream out, long position, long target) throws IOException {
+        while (position < target) {
+            out.write(0);
+            position++;
+        }
+        return position;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: AssetPackWriter <output> <file or directory>...");
+            return;
+        }
+
+        AssetPackWriter writer = new AssetPackWriter();
+        try {
+            for (int i = 1; i < args.length; i++) {
+                Path path = Paths.get(args[i]);
+                if (Files.isDirectory(path)) {
+                    writer.addDirectory(path);
+                } else {
+                    writer.add(path);
+                }
+            }
+
+            writer.write(Paths.get(args[0]));
+            DebugLogger.i("Packed " + writer.size() + " entries into " + args[0]);
+        } catch (IOException exception) {
+            DebugLogger.e("Could not create asset pack " + args[0] + ": " + exception.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package stellar.core.state;
+
+import stellar.core.GameManager;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+
+/**
+ * An overlay that fades the screen to a color and back, used to hide switching between states.
+ * The midpoint callback runs once the screen is fully covered, the overlay removes itself when it is done.
+ */
+public class FadeState implements GameState {
+
+    private final GameManager manager;
+    private final int ticks;
+    private final Runnable midpoint;
+    private Color color = Color.BLACK;
+    private int tick;
+
+    /**
+     * @param manager  the manager this state is pushed to.
+     * @param ticks    the amount of ticks to fade out, fading in takes as long.
+     * @param midpoint invoked once the screen is fully covered.
+     */
+    public FadeState(GameManager manager, int ticks, Runnable midpoint) {
+        this.manager = manager;
+        this.ticks = Math.max(1, ticks);
+        this.midpoint = midpoint;
+    }
+
+    @Override
+    public void onTick() {
+        tick++;
+        if (tick == ticks) {
+            midpoint.run();
+        }
+
+        if (tick >= ticks << 1) {
+            manager.remove(this);
+        }
+    }
+
+    @Override
+    public void onDraw(Graphics2D graphics) {
+        int covered = tick <= ticks ? tick : (ticks << 1) - tick;
+        int alpha = Math.max(0, Math.min(255, covered * 255 / ticks));
+        graphics.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), alpha));
+        graphics.fillRect(0, 0, manager.getWindow().getWidth(), manager.getWindow().getHeight());
+    }
+
+    /**
+     * Set the color to fade to, black by default.
+     *
+     * @param color the color.
+     */
+    public void setColor(Color color) {
+        this.color = color;
+    }
+
+}
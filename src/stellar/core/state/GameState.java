@@ -8,4 +8,50 @@ public interface GameState {
 
     void onDraw(Graphics2D graphics);
 
+    /**
+     * Load everything this state needs before it is shown, such as its textures and world.
+     * Called off the tick thread by GameManager#prepare while the current state keeps ticking and drawing,
+     * so this must not touch other states.
+     * <p>
+     * Every SpriteManager method may be used from here, images loaded and added now can be looked up by the tick thread
+     * right away. The timers, scheduler and animator of the GameManager may not, use GameManager#post for those.
+     *
+     * @throws Exception if loading failed, the state is not shown.
+     */
+    default void onLoad() throws Exception {
+    }
+
+    /**
+     * Independent states share nothing with other states while ticking, such as a state running its own world.
+     * They are ticked at the same time as the other states on a separate thread.
+     * <p>
+     * The timers, scheduler and animator of the GameManager belong to the tick thread and must not be used from an
+     * independent state's onTick, use GameManager#post to run such calls on the tick thread instead. The same goes for
+     * a World shared with another state, queries included. The SpriteManager is safe to use from any thread.
+     *
+     * @return true if this state can tick at the same time as other states.
+     */
+    default boolean isIndependent() {
+        return false;
+    }
+
+    /**
+     * An opaque state covers the whole screen, the states below it are not drawn.
+     * States are transparent overlays by default.
+     *
+     * @return true if this state hides the states below it.
+     */
+    default boolean isOpaque() {
+        return false;
+    }
+
+    /**
+     * A state that pauses the states below it, such as a pause menu, stops them from ticking while it is in the stack.
+     *
+     * @return true if the states below this one should not tick.
+     */
+    default boolean pausesBelow() {
+        return false;
+    }
+
 }
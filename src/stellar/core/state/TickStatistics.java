@@ -0,0 +1,73 @@
+package stellar.core.state;
+
+/**
+ * How long a state takes to tick.
+ */
+public final class TickStatistics {
+
+    private volatile long lastNanos, maxNanos, totalNanos;
+    private volatile long ticks, failures;
+
+    /**
+     * Record a tick. Used by the GameManager.
+     *
+     * @param nanos  the time the tick took in nanoseconds.
+     * @param failed true if the tick threw an exception.
+     */
+    public void record(long nanos, boolean failed) {
+        lastNanos = nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+        totalNanos += nanos;
+        ticks++;
+        if (failed) {
+            failures++;
+        }
+    }
+
+    /**
+     * @return the time the last tick took in nanoseconds.
+     */
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    /**
+     * @return the longest tick in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * @return the average tick in nanoseconds, 0 if there were no ticks.
+     */
+    public long getAverageNanos() {
+        long ticks = this.ticks;
+        return ticks == 0 ? 0 : totalNanos / ticks;
+    }
+
+    /**
+     * @return the amount of ticks.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return the amount of ticks that threw an exception.
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Reset every statistic.
+     */
+    public void reset() {
+        lastNanos = maxNanos = totalNanos = 0;
+        ticks = failures = 0;
+    }
+
+}
@@ -0,0 +1,317 @@
+package stellar.core.thread;
+
+import stellar.log.DebugLogger;
+
+import java.util.Arrays;
+
+/**
+ * Spreads expensive jobs such as AI decisions or pathfinding over several ticks so they never take more than a set
+ * amount of time per tick.
+ * <p>
+ * Jobs are kept in a queue per priority and run oldest first, higher priorities before lower ones. A job that asks
+ * to run again goes to the back of its queue, so jobs of the same priority take turns. Every job runs at most once
+ * per tick, and a job that waited longer than the starvation limit runs before any other job regardless of its
+ * priority. At least one job runs every tick, so a tick takes at most the budget plus the time of a single job.
+ * <p>
+ * The scheduler is not thread safe, jobs should be submitted from the game thread.
+ */
+public final class BudgetScheduler {
+
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    /**
+     * A unit of work.
+     */
+    public interface Job {
+
+        /**
+         * Run a slice of this job.
+         *
+         * @return true to run again on a later tick, false if the job is done.
+         */
+        boolean run();
+    }
+
+    private final JobQueue[] queues = new JobQueue[Priority.values().length];
+
+    private long budgetNanos;
+    private int starvationTicks = 30;
+    private long tick;
+
+    // statistics
+    private int lastRun, lastDeferred;
+    private long lastNanos;
+    private long totalRun, totalDeferred, totalPromoted;
+    private long maxWaitTicks;
+
+    /**
+     * Initialize with a budget of 2 milliseconds per tick.
+     */
+    public BudgetScheduler() {
+        this(2_000_000L);
+    }
+
+    /**
+     * @param budgetNanos the time jobs may take per tick in nanoseconds.
+     */
+    public BudgetScheduler(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new JobQueue();
+        }
+    }
+
+    /**
+     * Submit a job, it runs on the next tick at the earliest.
+     *
+     * @param job      the job.
+     * @param priority the priority.
+     */
+    public void submit(Job job, Priority priority) {
+        queues[priority.ordinal()].add(job, tick);
+    }
+
+    /**
+     * Run jobs until the budget is used up.
+     */
+    public void tick() {
+        long start = System.nanoTime();
+        tick++;
+
+        int run = 0;
+        while (true) {
+            JobQueue queue = nextQueue();
+            if (queue == null) {
+                break;
+            }
+
+            long waited = tick - queue.peekTick();
+            if (waited > maxWaitTicks) {
+                maxWaitTicks = waited;
+            }
+
+            Job job = queue.poll();
+            boolean again;
+            try {
+                again = job.run();
+            } catch (RuntimeException exception) {
+                DebugLogger.e("Scheduled job " + job.getClass() + " failed and was removed: " + exception);
+                again = false;
+            }
+            if (again) {
+                queue.add(job, tick);
+            }
+            run++;
+
+            if (System.nanoTime() - start >= budgetNanos) {
+                break;
+            }
+        }
+
+        // jobs that were ready this tick but did not fit in the budget.
+        int deferred = 0;
+        for (JobQueue queue : queues) {
+            deferred += queue.countBefore(tick);
+        }
+
+        lastRun = run;
+        lastDeferred = deferred;
+        lastNanos = System.nanoTime() - start;
+        totalRun += run;
+        totalDeferred += deferred;
+    }
+
+    /**
+     * @return the queue holding the next job to run, or null if no job is ready this tick.
+     */
+    private JobQueue nextQueue() {
+        JobQueue next = null;
+        for (JobQueue queue : queues) {
+            // jobs queued this tick wait for the next one.
+            if (queue.size > 0 && queue.peekTick() < tick) {
+                next = queue;
+                break;
+            }
+        }
+
+        // a starving job is promoted over every other job, oldest first.
+        JobQueue starving = null;
+        for (JobQueue queue : queues) {
+            if (queue.size > 0 && tick - queue.peekTick() > starvationTicks
+                    && (starving == null || queue.peekTick() < starving.peekTick())) {
+                starving = queue;
+            }
+        }
+
+        if (starving != null && starving != next) {
+            totalPromoted++;
+            return starving;
+        }
+        return next;
+    }
+
+    /**
+     * Remove every job.
+     */
+    public void clear() {
+        for (JobQueue queue : queues) {
+            queue.clear();
+        }
+    }
+
+    /**
+     * Set the time jobs may take per tick.
+     *
+     * @param budgetNanos the budget in nanoseconds.
+     */
+    public void setBudgetNanos(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * Set how many ticks a job may wait before it is run ahead of higher priorities, 30 by default.
+     *
+     * @param ticks the amount of ticks.
+     */
+    public void setStarvationTicks(int ticks) {
+        starvationTicks = Math.max(1, ticks);
+    }
+
+    /**
+     * @return the amount of queued jobs.
+     */
+    public int size() {
+        int size = 0;
+        for (JobQueue queue : queues) {
+            size += queue.size;
+        }
+        return size;
+    }
+
+    /**
+     * @return the amount of jobs run in the last tick.
+     */
+    public int getLastRun() {
+        return lastRun;
+    }
+
+    /**
+     * @return the amount of ready jobs that were deferred to a later tick in the last tick.
+     */
+    public int getLastDeferred() {
+        return lastDeferred;
+    }
+
+    /**
+     * @return the time the last tick took in nanoseconds.
+     */
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    /**
+     * @return the amount of jobs run since the statistics were reset.
+     */
+    public long getTotalRun() {
+        return totalRun;
+    }
+
+    /**
+     * @return the sum of the jobs deferred each tick since the statistics were reset.
+     */
+    public long getTotalDeferred() {
+        return totalDeferred;
+    }
+
+    /**
+     * @return the amount of starving jobs run ahead of their priority since the statistics were reset.
+     */
+    public long getTotalPromoted() {
+        return totalPromoted;
+    }
+
+    /**
+     * @return the most ticks a job waited before running since the statistics were reset.
+     */
+    public long getMaxWaitTicks() {
+        return maxWaitTicks;
+    }
+
+    /**
+     * Reset the statistics.
+     */
+    public void resetStatistics() {
+        lastRun = lastDeferred = 0;
+        lastNanos = 0;
+        totalRun = totalDeferred = totalPromoted = 0;
+        maxWaitTicks = 0;
+    }
+
+    /**
+     * A growable ring of jobs and the tick they were queued at.
+     */
+    private static final class JobQueue {
+        private Job[] jobs = new Job[16];
+        private long[] ticks = new long[16];
+        private int head, size;
+
+        private void add(Job job, long tick) {
+            if (size == jobs.length) {
+                grow();
+            }
+            int index = (head + size) & (jobs.length - 1);
+            jobs[index] = job;
+            ticks[index] = tick;
+            size++;
+        }
+
+        private long peekTick() {
+            return ticks[head];
+        }
+
+        private Job poll() {
+            Job job = jobs[head];
+            jobs[head] = null;
+            head = (head + 1) & (jobs.length - 1);
+            size--;
+            return job;
+        }
+
+        /**
+         * @return the amount of jobs queued before a tick, the queue is ordered by tick.
+         */
+        private int countBefore(long tick) {
+            int low = 0, high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (ticks[(head + middle) & (jobs.length - 1)] < tick) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private void grow() {
+            Job[] grown = new Job[jobs.length << 1];
+            long[] grownTicks = new long[grown.length];
+            for (int i = 0; i < size; i++) {
+                int index = (head + i) & (jobs.length - 1);
+                grown[i] = jobs[index];
+                grownTicks[i] = ticks[index];
+            }
+            jobs = grown;
+            ticks = grownTicks;
+            head = 0;
+        }
+
+        private void clear() {
+            Arrays.fill(jobs, null);
+            head = size = 0;
+        }
+    }
+
+}
@@ -0,0 +1,315 @@
+package stellar.core.thread;
+
+import stellar.log.DebugLogger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The work of a frame as a graph of jobs, such as input, entity updates, collision and render preparation.
+ * <p>
+ * A job starts as soon as every job it runs after is done, so jobs that don't depend on each other run at the same
+ * time on a work stealing pool. Jobs that must stay on one thread, such as anything touching Swing or AWT, can be
+ * pinned to the thread calling {@link #run()}. The time every job took in the last frame is kept.
+ */
+public final class FrameGraph {
+
+    /**
+     * A job in the graph.
+     */
+    public static final class Job {
+        private final FrameGraph graph;
+        private final String name;
+        private final Runnable work;
+        private final List<Job> dependencies = new ArrayList<>();
+        private boolean mainThread;
+
+        private int index;
+        private volatile long lastNanos;
+
+        private Job(FrameGraph graph, String name, Runnable work) {
+            this.graph = graph;
+            this.name = name;
+            this.work = work;
+        }
+
+        /**
+         * Run this job only after other jobs are done.
+         *
+         * @param jobs the jobs to wait for.
+         * @return this job.
+         */
+        public Job after(Job... jobs) {
+            for (Job job : jobs) {
+                if (job.graph != graph) {
+                    throw new IllegalArgumentException("Job " + job.name + " is in another frame graph.");
+                }
+                dependencies.add(job);
+            }
+            graph.compiled = false;
+            return this;
+        }
+
+        /**
+         * Pin this job to the thread running the graph.
+         *
+         * @param mainThread true to run on the thread calling {@link FrameGraph#run()}.
+         * @return this job.
+         */
+        public Job setMainThread(boolean mainThread) {
+            this.mainThread = mainThread;
+            return this;
+        }
+
+        /**
+         * @return the name of this job.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return true if this job runs on the thread running the graph.
+         */
+        public boolean isMainThread() {
+            return mainThread;
+        }
+
+        /**
+         * @return the time this job took in the last frame in nanoseconds.
+         */
+        public long getLastNanos() {
+            return lastNanos;
+        }
+    }
+
+    // wakes the thread running the graph once every job is done.
+    private static final Job DONE = new Job(null, "done", null);
+
+    private final List<Job> jobs = new ArrayList<>();
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    // built from the dependencies of the jobs when they change.
+    private boolean compiled;
+    private int[][] dependents = new int[0][];
+    private int[] dependencyCounts = new int[0];
+
+    private AtomicIntegerArray remaining = new AtomicIntegerArray(0);
+    private final AtomicInteger unfinished = new AtomicInteger();
+    private final LinkedBlockingQueue<Job> mainQueue = new LinkedBlockingQueue<>();
+    // the first error thrown by a job this frame, rethrown once every job is done.
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private long lastFrameNanos;
+
+    /**
+     * Add a job.
+     *
+     * @param name the name of the job, for timing.
+     * @param work the work.
+     * @return the job, to add dependencies to.
+     */
+    public Job add(String name, Runnable work) {
+        Job job = new Job(this, name, work);
+        job.index = jobs.size();
+        jobs.add(job);
+        compiled = false;
+        return job;
+    }
+
+    /**
+     * Run every job once and wait until all of them are done. Jobs pinned to the main thread run on the calling thread.
+     * <p>
+     * A job that throws an exception is logged and its dependents still run. If a job throws an error, the rest of the
+     * frame still runs and the first error is thrown from here afterwards.
+     */
+    public void run() {
+        long start = System.nanoTime();
+        int count = jobs.size();
+        if (count == 0) {
+            return;
+        }
+
+        if (!compiled) {
+            compile();
+        }
+
+        // anything left over from a frame that was cut short.
+        mainQueue.clear();
+        failure.set(null);
+
+        for (int i = 0; i < count; i++) {
+            remaining.set(i, dependencyCounts[i]);
+        }
+        unfinished.set(count);
+        for (int i = 0; i < count; i++) {
+            if (dependencyCounts[i] == 0) {
+                schedule(jobs.get(i));
+            }
+        }
+
+        boolean interrupted = false;
+        while (true) {
+            Job job;
+            try {
+                job = mainQueue.take();
+            } catch (InterruptedException exception) {
+                // jobs are still running on the pool, so keep waiting.
+                interrupted = true;
+                continue;
+            }
+
+            if (job == DONE) {
+                break;
+            }
+            execute(job);
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        lastFrameNanos = System.nanoTime() - start;
+
+        Throwable error = failure.getAndSet(null);
+        if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw new IllegalStateException("Frame job failed.", error);
+        }
+    }
+
+    /**
+     * Work out which jobs each job releases, and make sure there is no cycle.
+     */
+    private void compile() {
+        int count = jobs.size();
+        int[] dependentCounts = new int[count];
+        dependencyCounts = new int[count];
+        for (Job job : jobs) {
+            dependencyCounts[job.index] = job.dependencies.size();
+            for (Job dependency : job.dependencies) {
+                dependentCounts[dependency.index]++;
+            }
+        }
+
+        dependents = new int[count][];
+        for (int i = 0; i < count; i++) {
+            dependents[i] = new int[dependentCounts[i]];
+            dependentCounts[i] = 0;
+        }
+        for (Job job : jobs) {
+            for (Job dependency : job.dependencies) {
+                dependents[dependency.index][dependentCounts[dependency.index]++] = job.index;
+            }
+        }
+
+        // every job is visited once if there is no cycle.
+        int[] counts = dependencyCounts.clone();
+        int[] ready = new int[count];
+        int readyCount = 0, visited = 0;
+        for (int i = 0; i < count; i++) {
+            if (counts[i] == 0) {
+                ready[readyCount++] = i;
+            }
+        }
+        while (visited < readyCount) {
+            for (int dependent : dependents[ready[visited++]]) {
+                if (--counts[dependent] == 0) {
+                    ready[readyCount++] = dependent;
+                }
+            }
+        }
+        if (visited < count) {
+            for (int i = 0; i < count; i++) {
+                if (counts[i] > 0) {
+                    throw new IllegalStateException("Frame graph has a cycle through job " + jobs.get(i).name);
+                }
+            }
+        }
+
+        remaining = new AtomicIntegerArray(count);
+        compiled = true;
+    }
+
+    private void schedule(Job job) {
+        if (job.mainThread) {
+            mainQueue.add(job);
+        } else if (ForkJoinTask.getPool() == pool) {
+            // keep released jobs on this worker, idle workers steal them.
+            new JobTask(job).fork();
+        } else {
+            pool.execute(new JobTask(job));
+        }
+    }
+
+    private void execute(Job job) {
+        long start = System.nanoTime();
+        try {
+            job.work.run();
+        } catch (RuntimeException exception) {
+            DebugLogger.e("Frame job " + job.name + " failed: " + exception);
+        } catch (Throwable throwable) {
+            DebugLogger.e("Frame job " + job.name + " failed: " + throwable);
+            failure.compareAndSet(null, throwable);
+        } finally {
+            job.lastNanos = System.nanoTime() - start;
+
+            // always release the dependents, otherwise the thread running the graph waits forever.
+            for (int dependent : dependents[job.index]) {
+                if (remaining.decrementAndGet(dependent) == 0) {
+                    schedule(jobs.get(dependent));
+                }
+            }
+            if (unfinished.decrementAndGet() == 0) {
+                mainQueue.add(DONE);
+            }
+        }
+    }
+
+    /**
+     * Set the pool jobs that are not pinned to the main thread run on, the common pool by default.
+     *
+     * @param pool the pool.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return every job in the order they were added.
+     */
+    public List<Job> getJobs() {
+        return Collections.unmodifiableList(jobs);
+    }
+
+    /**
+     * @return the time the last frame took in nanoseconds.
+     */
+    public long getLastFrameNanos() {
+        return lastFrameNanos;
+    }
+
+    private final class JobTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Job job;
+
+        private JobTask(Job job) {
+            this.job = job;
+        }
+
+        @Override
+        protected void compute() {
+            execute(job);
+        }
+    }
+
+}
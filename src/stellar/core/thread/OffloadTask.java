@@ -0,0 +1,116 @@
+package stellar.core.thread;
+
+import com.sun.istack.internal.Nullable;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Blocking work running off the tick thread, its result is delivered back on the tick thread.
+ *
+ * @param <T> the type of the result.
+ */
+public final class OffloadTask<T> implements Runnable {
+
+    private final Offloader offloader;
+    private final Object owner;
+    private final Callable<T> task;
+    private final Consumer<T> onComplete;
+    private final Consumer<Exception> onError;
+
+    private volatile boolean cancelled, done;
+    private volatile Future<?> future;
+    private T result;
+    private Exception error;
+
+    OffloadTask(Offloader offloader, @Nullable Object owner, Callable<T> task, @Nullable Consumer<T> onComplete,
+                @Nullable Consumer<Exception> onError) {
+        this.offloader = offloader;
+        this.owner = owner;
+        this.task = task;
+        this.onComplete = onComplete;
+        this.onError = onError;
+    }
+
+    @Override
+    public void run() {
+        if (cancelled) {
+            return;
+        }
+
+        try {
+            result = task.call();
+        } catch (Exception exception) {
+            error = exception;
+        }
+        offloader.complete(this);
+    }
+
+    /**
+     * Invoke the callback, on the tick thread.
+     */
+    void deliver() {
+        done = true;
+        if (cancelled) {
+            return;
+        }
+
+        if (error == null) {
+            if (onComplete != null) {
+                onComplete.accept(result);
+            }
+        } else if (onError != null) {
+            onError.accept(error);
+        } else {
+            offloader.logError(task, error);
+        }
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+        // cancelled before it was even submitted.
+        if (cancelled) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Cancel this task, the task is interrupted if it is running and its callbacks are never invoked.
+     */
+    public void cancel() {
+        if (cancelled || done) {
+            return;
+        }
+
+        cancelled = true;
+        Future<?> future = this.future;
+        if (future != null) {
+            future.cancel(true);
+        }
+        offloader.forget(this);
+    }
+
+    /**
+     * @return true if this task was cancelled.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true once the result was delivered on the tick thread.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return the owner this task is cancelled with, or null.
+     */
+    @Nullable
+    public Object getOwner() {
+        return owner;
+    }
+
+}
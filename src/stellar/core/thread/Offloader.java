@@ -0,0 +1,126 @@
+package stellar.core.thread;
+
+import com.sun.istack.internal.Nullable;
+import stellar.log.DebugLogger;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs blocking work such as file or network I/O off the tick thread and hands the results back to it.
+ * <p>
+ * Work runs on virtual threads when the runtime supports them, otherwise on a pool of daemon threads.
+ * Finished work waits in a queue until {@link #drain()} is called on the tick thread, which invokes the callbacks.
+ */
+public final class Offloader {
+
+    private final ExecutorService executor = createExecutor();
+    private final ConcurrentLinkedQueue<OffloadTask<?>> completed = new ConcurrentLinkedQueue<>();
+    private final Set<OffloadTask<?>> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Run a task off the tick thread.
+     *
+     * @param owner      the owner the task is cancelled with, or null.
+     * @param task       the task.
+     * @param onComplete invoked with the result on the tick thread, or null.
+     * @param onError    invoked with the exception on the tick thread if the task failed, or null to log it.
+     * @param <T>        the type of the result.
+     * @return the task.
+     */
+    public <T> OffloadTask<T> submit(@Nullable Object owner, Callable<T> task, @Nullable Consumer<T> onComplete,
+                                     @Nullable Consumer<Exception> onError) {
+        OffloadTask<T> offloaded = new OffloadTask<>(this, owner, task, onComplete, onError);
+        pending.add(offloaded);
+        try {
+            offloaded.setFuture(executor.submit(offloaded));
+        } catch (RejectedExecutionException exception) {
+            DebugLogger.e("Could not offload " + task.getClass() + ", the offloader was shut down.");
+            pending.remove(offloaded);
+            offloaded.cancel();
+        }
+        return offloaded;
+    }
+
+    /**
+     * Invoke the callbacks of every finished task. Must be called on the tick thread.
+     */
+    public void drain() {
+        OffloadTask<?> task;
+        while ((task = completed.poll()) != null) {
+            try {
+                task.deliver();
+            } catch (RuntimeException exception) {
+                DebugLogger.e("Offload callback failed: " + exception);
+            }
+        }
+    }
+
+    /**
+     * Cancel every task with an owner.
+     *
+     * @param owner the owner.
+     */
+    public void cancel(Object owner) {
+        for (OffloadTask<?> task : pending) {
+            if (task.getOwner() == owner) {
+                task.cancel();
+            }
+        }
+    }
+
+    /**
+     * Cancel every task and stop accepting new ones.
+     */
+    public void shutdown() {
+        for (OffloadTask<?> task : pending) {
+            task.cancel();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the amount of tasks that were not delivered or cancelled yet.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    void complete(OffloadTask<?> task) {
+        if (pending.remove(task)) {
+            completed.add(task);
+        }
+    }
+
+    void forget(OffloadTask<?> task) {
+        pending.remove(task);
+    }
+
+    void logError(Callable<?> task, Exception error) {
+        DebugLogger.e("Offloaded task " + task.getClass() + " failed: " + error);
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException exception) {
+            // virtual threads need a newer runtime.
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "Stellar-Offload-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+}
@@ -0,0 +1,278 @@
+package stellar.core.thread;
+
+import stellar.log.DebugLogger;
+
+import java.util.Arrays;
+
+/**
+ * Runs callbacks a number of ticks in the future, for cooldowns, status effects, respawn timers and delayed events.
+ * <p>
+ * Timers are kept in a hierarchy of 4 wheels of 256 slots, the first wheel holds timers due within 256 ticks, the
+ * next within 65536 ticks and so on. Timers in the outer wheels move inwards as their slot comes up, so scheduling,
+ * cancelling and each tick only touch the timers that are involved instead of every pending timer.
+ * <p>
+ * Timer nodes are pooled in arrays and referred to by handles, a handle goes stale once its timer ran or was cancelled
+ * so it is always safe to cancel. Handles are never 0, it can be used for "no timer". The wheel is not thread safe,
+ * callbacks run on the thread calling {@link #tick()}.
+ */
+public final class TimingWheel {
+
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELAY = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    // the list of timers being run, so they can still be cancelled by earlier callbacks.
+    private static final int FIRING = SLOTS * LEVELS;
+    private static final int NONE = -1;
+
+    private final int[] heads = new int[FIRING + 1];
+
+    // timer nodes, free nodes are linked through next.
+    private Runnable[] callbacks;
+    private long[] deadlines;
+    private int[] next, previous;
+    private int[] slots;
+    private int[] generations;
+    private int freeHead = NONE;
+    private int allocated;
+
+    private long tick;
+    private int size;
+
+    public TimingWheel() {
+        this(1024);
+    }
+
+    /**
+     * @param capacity the amount of timers to allocate room for up front.
+     */
+    public TimingWheel(int capacity) {
+        capacity = Math.max(16, capacity);
+        callbacks = new Runnable[capacity];
+        deadlines = new long[capacity];
+        next = new int[capacity];
+        previous = new int[capacity];
+        slots = new int[capacity];
+        generations = new int[capacity];
+        Arrays.fill(heads, NONE);
+    }
+
+    /**
+     * Schedule a callback.
+     *
+     * @param ticks    the amount of ticks from now, at least 1.
+     * @param callback the callback.
+     * @return the handle of the timer.
+     */
+    public long schedule(long ticks, Runnable callback) {
+        int node = allocate();
+        callbacks[node] = callback;
+        deadlines[node] = tick + Math.max(1, Math.min(MAX_DELAY, ticks));
+        insert(node);
+        size++;
+        return ((long) generations[node] << 32) | node;
+    }
+
+    /**
+     * Cancel a timer. Does nothing if it already ran or was cancelled.
+     *
+     * @param handle the handle of the timer.
+     * @return true if the timer was cancelled.
+     */
+    public boolean cancel(long handle) {
+        int node = resolve(handle);
+        if (node == NONE) {
+            return false;
+        }
+
+        unlink(node);
+        release(node);
+        size--;
+        return true;
+    }
+
+    /**
+     * @param handle the handle of the timer.
+     * @return true if the timer has not run and was not cancelled.
+     */
+    public boolean isPending(long handle) {
+        return resolve(handle) != NONE;
+    }
+
+    /**
+     * @param handle the handle of the timer.
+     * @return the amount of ticks until the timer runs, or -1 if it is not pending.
+     */
+    public long getRemainingTicks(long handle) {
+        int node = resolve(handle);
+        return node == NONE ? -1 : deadlines[node] - tick;
+    }
+
+    /**
+     * Advance one tick and run the callbacks that are due, in no particular order.
+     */
+    public void tick() {
+        tick++;
+
+        // pull the timers of outer wheels inwards whenever an inner wheel wraps around.
+        for (int level = 1; level < LEVELS; level++) {
+            if ((tick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                break;
+            }
+            cascade(level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK));
+        }
+
+        int slot = (int) (tick & SLOT_MASK);
+        if (heads[slot] == NONE) {
+            return;
+        }
+
+        // move the slot to the firing list, callbacks may schedule into it again or cancel what is left.
+        moveAll(slot, FIRING);
+        int node;
+        while ((node = heads[FIRING]) != NONE) {
+            Runnable callback = callbacks[node];
+            unlink(node);
+            release(node);
+            size--;
+
+            try {
+                callback.run();
+            } catch (RuntimeException exception) {
+                DebugLogger.e("Timer callback " + callback.getClass() + " failed: " + exception);
+            }
+        }
+    }
+
+    /**
+     * Re-insert every timer in a slot of an outer wheel, they are due within the wheel below it.
+     */
+    private void cascade(int slot) {
+        int node = heads[slot];
+        heads[slot] = NONE;
+        while (node != NONE) {
+            int following = next[node];
+            insert(node);
+            node = following;
+        }
+    }
+
+    private void moveAll(int from, int to) {
+        int node = heads[from];
+        heads[from] = NONE;
+        while (node != NONE) {
+            int following = next[node];
+            link(node, to);
+            node = following;
+        }
+    }
+
+    /**
+     * Put a node in the slot of the innermost wheel that can hold its deadline.
+     */
+    private void insert(int node) {
+        long deadline = deadlines[node];
+        long delay = deadline - tick;
+        int level = 0;
+        while (level < LEVELS - 1 && delay >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        link(node, level * SLOTS + (int) ((deadline >>> (SLOT_BITS * level)) & SLOT_MASK));
+    }
+
+    private void link(int node, int slot) {
+        int head = heads[slot];
+        next[node] = head;
+        previous[node] = NONE;
+        if (head != NONE) {
+            previous[head] = node;
+        }
+        heads[slot] = node;
+        slots[node] = slot;
+    }
+
+    private void unlink(int node) {
+        int before = previous[node];
+        int after = next[node];
+        if (before == NONE) {
+            heads[slots[node]] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after != NONE) {
+            previous[after] = before;
+        }
+    }
+
+    /**
+     * @return the node of a pending timer, or NONE if the handle is stale.
+     */
+    private int resolve(long handle) {
+        int node = (int) handle;
+        if (node < 0 || node >= allocated || generations[node] != (int) (handle >>> 32) || callbacks[node] == null) {
+            return NONE;
+        }
+        return node;
+    }
+
+    private int allocate() {
+        if (freeHead != NONE) {
+            int node = freeHead;
+            freeHead = next[node];
+            return node;
+        }
+
+        if (allocated == callbacks.length) {
+            int capacity = allocated << 1;
+            callbacks = Arrays.copyOf(callbacks, capacity);
+            deadlines = Arrays.copyOf(deadlines, capacity);
+            next = Arrays.copyOf(next, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+        }
+        // generations start at 1 so a handle is never 0.
+        generations[allocated] = 1;
+        return allocated++;
+    }
+
+    private void release(int node) {
+        callbacks[node] = null;
+        generations[node] = generations[node] == Integer.MAX_VALUE ? 1 : generations[node] + 1;
+        next[node] = freeHead;
+        freeHead = node;
+    }
+
+    /**
+     * Cancel every timer.
+     */
+    public void clear() {
+        for (int slot = 0; slot < heads.length; slot++) {
+            int node = heads[slot];
+            heads[slot] = NONE;
+            while (node != NONE) {
+                int following = next[node];
+                release(node);
+                node = following;
+            }
+        }
+        size = 0;
+    }
+
+    /**
+     * @return the amount of pending timers.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the amount of ticks this wheel has advanced.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+}
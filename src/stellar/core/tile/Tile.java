@@ -2,6 +2,7 @@ package stellar.core.tile;
 
 import stellar.core.collision.BoundingBox2D;
 import stellar.core.location.Location;
+import stellar.core.sprite.animation.Animator;
 
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
@@ -16,6 +17,9 @@ public class Tile {
     private double x, y, width, height;
     private int uniqueID;
 
+    private Animator animator;
+    private long animation;
+
     /**
      * @param texture  the texture of this tile.
      * @param uniqueID the uniqueID representing this tile.
@@ -82,10 +86,35 @@ public class Tile {
     }
 
     /**
-     * @return the tiles texture.
+     * @return the tiles texture, the current frame if an animation is set.
      */
     public BufferedImage getTexture() {
-        return texture;
+        if (animator == null) {
+            return texture;
+        }
+
+        // fall back to the texture once the animation was stopped.
+        BufferedImage frame = animator.getFrame(animation);
+        return frame == null ? texture : frame;
+    }
+
+    /**
+     * Set the animation of this tile. Tiles that should animate together can share the same handle.
+     *
+     * @param animator the animator that plays the animation.
+     * @param handle   the handle returned from Animator#play.
+     */
+    public void setAnimation(Animator animator, long handle) {
+        this.animator = animator;
+        this.animation = handle;
+    }
+
+    /**
+     * Remove the animation of this tile, the texture will be used again.
+     */
+    public void clearAnimation() {
+        animator = null;
+        animation = 0;
     }
 
     /**
@@ -227,6 +256,7 @@ public class Tile {
      * @param graphics the graphics object to draw with.
      */
     public void drawTileDouble(Graphics2D graphics) {
+        BufferedImage texture = getTexture();
         AffineTransform proper = graphics.getTransform();
 
         graphics.translate(x, y);
@@ -242,7 +272,7 @@ public class Tile {
      * @param graphics the graphics object to draw with.
      */
     public void drawTileInt(Graphics2D graphics) {
-        graphics.drawImage(texture, (int) x, (int) y, null);
+        graphics.drawImage(getTexture(), (int) x, (int) y, null);
     }
 
     /**
@@ -251,6 +281,7 @@ public class Tile {
      * @param graphics the graphics object to draw with.
      */
     public void drawTileDoubleWithInterpolation(Graphics2D graphics) {
+        BufferedImage texture = getTexture();
         AffineTransform proper = graphics.getTransform();
 
         graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
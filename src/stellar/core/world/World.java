@@ -1,17 +1,59 @@
 package stellar.core.world;
 
 import com.sun.istack.internal.Nullable;
+import stellar.core.collision.BoundingBox2D;
+import stellar.core.collision.TileCollision;
+import stellar.core.collision.broadphase.Broadphase;
 import stellar.core.entity.Entity;
-import stellar.core.world.entity.ActionEntity;
+import stellar.core.tile.Tile;
+import stellar.core.world.entity.ActivityLevel;
+import stellar.core.world.entity.EntityCommandBuffer;
+import stellar.core.world.entity.EntityCommandQueue;
+import stellar.core.world.entity.EntityIndex;
+import stellar.core.world.entity.EntityPool;
+import stellar.core.world.entity.EntityStore;
 import stellar.core.world.map.WorldRenderer;
+import stellar.log.DebugLogger;
 
 import java.awt.Graphics2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public abstract class World extends WorldRenderer {
-    protected final List<ActionEntity> actionList = new ArrayList<>();
+    protected final EntityCommandQueue commandQueue = new EntityCommandQueue();
     protected final List<Entity> worldEntities = new ArrayList<>();
+    protected final EntityIndex entityIndex = new EntityIndex();
+
+    // results of point queries, one match is all we are after.
+    // per thread, entities may query and move themselves while being updated in parallel.
+    private final ThreadLocal<Entity[]> queryBuffers = ThreadLocal.withInitial(() -> new Entity[16]);
+    private final ThreadLocal<BoundingBox2D> sweepBoxes = ThreadLocal.withInitial(BoundingBox2D::new);
+    // commands drained from the queue, only touched by the thread applying them.
+    private final EntityCommandBuffer drainedCommands = new EntityCommandBuffer();
+
+    // adds and removals queued by the thread updating a chunk of entities, unset outside of a parallel update.
+    private final ThreadLocal<EntityCommandBuffer> activeCommands = new ThreadLocal<>();
+    private EntityCommandBuffer[] chunkCommands = new EntityCommandBuffer[0];
+    private ForkJoinPool updatePool = ForkJoinPool.commonPool();
+    private int updateChunkSize = 256;
+    // the entities being updated by the current update.
+    private List<Entity> updateTargets;
+    private long worldTick;
+
+    // activity levels are only used while there is an interest point and a broadphase.
+    private final List<Entity> interestPoints = new ArrayList<>();
+    private List<Entity> awakeEntities = new ArrayList<>();
+    private List<Entity> previousAwakeEntities = new ArrayList<>();
+    private Entity[] activityBuffer = new Entity[256];
+    private double fullActivityRadius = 640, reducedActivityRadius = 1280;
+    private int reducedTickRate = 4;
+    private boolean activityEnabled;
+
+    protected EntityStore entityStore;
+    protected Broadphase broadphase;
 
     protected String worldName;
     protected int width, height, tileWidth, tileHeight;
@@ -54,57 +96,235 @@ public abstract class World extends WorldRenderer {
     /**
      * Add an entity to the world.
      * Using this method is unsafe and could cause concurrency exceptions.
+     * Entities that are already in this world, or with an ID that is already used by another entity in this world,
+     * are not added.
      *
      * @param entity the entity to add.
      */
     public final void addEntity(Entity entity) {
+        if (isResident(entity)) {
+            DebugLogger.w("Entity " + entity.getClass() + ", ID " + entity.getEntityID() + " is already in this world.");
+            return;
+        }
+        if (!entityIndex.put(entity)) {
+            DebugLogger.e("Could not add entity " + entity.getClass() + ", ID " + entity.getEntityID() + " is already in use!");
+            return;
+        }
+
+        entity.setWorldSlot(worldEntities.size());
         worldEntities.add(entity);
+        // going through dormant resets the ticks counted towards the next update.
+        entity.setActivityLevel(ActivityLevel.DORMANT, worldTick);
+        if (!activityEnabled) {
+            entity.setActivityLevel(ActivityLevel.FULL, worldTick);
+        }
+        onEntityAdded(entity);
     }
 
     /**
      * Remove an entity from this world.
      * Using this method is unsafe and could cause concurrency exceptions.
+     * The last entity takes the place of the removed one, so the order of the entity list is not kept.
+     * Entities obtained from an {@link EntityPool} are returned to it.
      *
      * @param entity the entity to remove.
      */
     public final void removeEntity(Entity entity) {
-        worldEntities.remove(entity);
+        if (!isResident(entity)) {
+            return;
+        }
+
+        int slot = entity.getWorldSlot();
+        Entity last = worldEntities.remove(worldEntities.size() - 1);
+        if (last != entity) {
+            worldEntities.set(slot, last);
+            last.setWorldSlot(slot);
+        }
+        entity.setWorldSlot(-1);
+
+        entityIndex.remove(entity);
+        onEntityRemoved(entity);
+    }
+
+    /**
+     * Keep the world's entity structures in sync with a newly added entity.
+     *
+     * @param entity the entity.
+     */
+    private void onEntityAdded(Entity entity) {
+        if (entityStore != null) {
+            entity.attach(entityStore);
+        }
+
+        if (broadphase != null) {
+            broadphase.add(entity);
+        }
+    }
+
+    /**
+     * Keep the world's entity structures in sync with a removed entity.
+     *
+     * @param entity the entity.
+     */
+    private void onEntityRemoved(Entity entity) {
+        if (entityStore != null) {
+            entity.detach();
+        }
+
+        if (broadphase != null) {
+            broadphase.remove(entity);
+        }
+        interestPoints.remove(entity);
+
+        // pooled entities are done with once they leave the world.
+        EntityPool<?> pool = entity.getPool();
+        if (pool != null) {
+            pool.free(entity);
+        }
+    }
+
+    /**
+     * Set the broadphase used for spatial queries. Every entity in this world is moved into it, entities
+     * must call Entity#updateBoundingBox after moving to keep it up to date.
+     *
+     * @param broadphase the broadphase, or null to stop using one.
+     */
+    public final void setBroadphase(@Nullable Broadphase broadphase) {
+        if (this.broadphase != null) {
+            worldEntities.forEach(this.broadphase::remove);
+        }
+
+        this.broadphase = broadphase;
+        if (broadphase != null) {
+            worldEntities.forEach(broadphase::add);
+        }
+    }
+
+    /**
+     * @return the broadphase used for spatial queries, null if none is set.
+     */
+    @Nullable
+    public final Broadphase getBroadphase() {
+        return broadphase;
+    }
+
+    /**
+     * Store the hot fields of every entity in this world in dense arrays, see {@link EntityStore}.
+     * Entities that are already in the world are moved into the store.
+     */
+    public final void enableEntityStore() {
+        if (entityStore != null) {
+            return;
+        }
+
+        entityStore = new EntityStore(Math.max(256, worldEntities.size()));
+        worldEntities.forEach(entity -> entity.attach(entityStore));
+    }
+
+    /**
+     * Move every entity out of the entity store and stop using it.
+     */
+    public final void disableEntityStore() {
+        if (entityStore == null) {
+            return;
+        }
+
+        worldEntities.forEach(Entity::detach);
+        entityStore = null;
+    }
+
+    /**
+     * @return the entity store, null if not enabled.
+     */
+    @Nullable
+    public final EntityStore getEntityStore() {
+        return entityStore;
+    }
+
+    /**
+     * Move every entity by its velocity and update their bounding boxes.
+     *
+     * @param delta the amount of time that passed, in the same unit as the velocities.
+     */
+    public final void integrate(double delta) {
+        if (entityStore != null) {
+            entityStore.integrate(delta);
+            entityStore.syncBoundingBoxes();
+            return;
+        }
+
+        for (Entity entity : worldEntities) {
+            entity.setX(entity.getX() + entity.getVelocityX() * delta);
+            entity.setY(entity.getY() + entity.getVelocityY() * delta);
+            entity.updateBoundingBox();
+        }
     }
 
     /**
-     * Queue an entity to be added.
+     * Queue an entity to be added. Safe to call from any thread.
      *
      * @param entity the entity to be added.
      */
     public final void queueEntityForAdd(Entity entity) {
-        ActionEntity actionEntity = new ActionEntity(entity, ActionEntity.EntityAction.ADD);
-        actionList.add(actionEntity);
+        EntityCommandBuffer commands = activeCommands.get();
+        if (commands != null) {
+            commands.add(entity);
+            return;
+        }
+        commandQueue.offerAdd(entity);
     }
 
     /**
-     * Queue an entity to be removed.
+     * Queue an entity to be removed. Safe to call from any thread.
      *
      * @param entity the entity to be removed.
      */
     public final void queueEntityForRemoval(Entity entity) {
-        ActionEntity actionEntity = new ActionEntity(entity, ActionEntity.EntityAction.REMOVE);
-        actionList.add(actionEntity);
+        EntityCommandBuffer commands = activeCommands.get();
+        if (commands != null) {
+            commands.remove(entity);
+            return;
+        }
+        commandQueue.offerRemove(entity);
+    }
+
+    /**
+     * Obtain an entity from a pool and queue it to be added. Safe to call from any thread.
+     * The entity goes back to the pool when it is removed from this world.
+     *
+     * @param pool     the pool.
+     * @param x        the x position.
+     * @param y        the y position.
+     * @param entityID the unique identifier.
+     * @param <T>      the type of entity.
+     * @return the entity.
+     */
+    public final <T extends Entity> T spawnEntity(EntityPool<T> pool, double x, double y, int entityID) {
+        T entity = pool.obtain(x, y, entityID);
+        queueEntityForAdd(entity);
+        return entity;
     }
 
     public final void doQueueActions() {
         // for entities that need to be added/removed, we call this before any drawing/updating methods.
-        for (ActionEntity entity : actionList) {
-            switch (entity.getAction()) {
-                case ADD:
-                    worldEntities.add(entity.getEntity());
-                    break;
-                case REMOVE:
-                    worldEntities.remove(entity.getEntity());
-                    break;
+        commandQueue.drainTo(drainedCommands);
+        applyCommands(drainedCommands);
+    }
+
+    /**
+     * Apply and clear a buffer of adds and removals.
+     *
+     * @param commands the commands.
+     */
+    private void applyCommands(EntityCommandBuffer commands) {
+        for (int i = 0; i < commands.size(); i++) {
+            if (commands.isAdd(i)) {
+                addEntity(commands.getEntity(i));
+            } else {
+                removeEntity(commands.getEntity(i));
             }
         }
-        // clear the entity action list.
-        actionList.clear();
+        commands.clear();
     }
 
     /**
@@ -113,7 +333,7 @@ public abstract class World extends WorldRenderer {
      */
     @Nullable
     public final Entity getEntityFromID(int entityID) {
-        return worldEntities.stream().filter(entity -> entity.getEntityID() == entityID).findAny().orElse(null);
+        return entityIndex.get(entityID);
     }
 
     /**
@@ -122,7 +342,7 @@ public abstract class World extends WorldRenderer {
      * @return true if the entity is at the exact coordinates.
      */
     public final boolean isAnyEntityAt(double x, double y) {
-        return worldEntities.stream().anyMatch(entity -> entity.isAt(x, y));
+        return getEntityAt(x, y) != null;
     }
 
     /**
@@ -132,7 +352,483 @@ public abstract class World extends WorldRenderer {
      */
     @Nullable
     public final Entity getEntityAt(double x, double y) {
-        return worldEntities.stream().filter(entity -> entity.isAt(x, y)).findAny().orElse(null);
+        if (broadphase == null) {
+            return worldEntities.stream().filter(entity -> entity.isAt(x, y)).findAny().orElse(null);
+        }
+
+        // an entity at the coordinates has the point on the corner of its bounding box.
+        Entity[] queryBuffer = queryBuffers.get();
+        int count = broadphase.queryRegion(x, y, 0, 0, queryBuffer);
+        for (int i = 0; i < count; i++) {
+            if (queryBuffer[i].isAt(x, y)) {
+                return queryBuffer[i];
+            }
+        }
+
+        // the buffer filled up, the match could be one of the entities that did not fit.
+        if (count == queryBuffer.length) {
+            return worldEntities.stream().filter(entity -> entity.isAt(x, y)).findAny().orElse(null);
+        }
+        return null;
+    }
+
+    /**
+     * Find the entities overlapping a region. Requires a broadphase.
+     *
+     * @param x       the origin X of the region.
+     * @param y       the origin Y of the region.
+     * @param width   the width of the region.
+     * @param height  the height of the region.
+     * @param results the array to write entities to.
+     * @return the amount of entities written to results.
+     */
+    public final int getEntitiesIn(double x, double y, double width, double height, Entity[] results) {
+        return requireBroadphase() ? broadphase.queryRegion(x, y, width, height, results) : 0;
+    }
+
+    /**
+     * Find the entities within a radius of a point. Requires a broadphase.
+     *
+     * @param x       the X coordinate of the center.
+     * @param y       the Y coordinate of the center.
+     * @param radius  the radius.
+     * @param results the array to write entities to.
+     * @return the amount of entities written to results.
+     */
+    public final int getEntitiesWithin(double x, double y, double radius, Entity[] results) {
+        return requireBroadphase() ? broadphase.queryRadius(x, y, radius, results) : 0;
+    }
+
+    /**
+     * Find the entities closest to a point. Requires a broadphase.
+     *
+     * @param x       the X coordinate.
+     * @param y       the Y coordinate.
+     * @param results the array to write entities to, closest first. Its length is how many entities to find.
+     * @return the amount of entities written to results.
+     */
+    public final int getNearestEntities(double x, double y, Entity[] results) {
+        return requireBroadphase() ? broadphase.queryNearest(x, y, results) : 0;
+    }
+
+    /**
+     * Invoke the callback for every pair of entities whose bounding boxes overlap. Requires a broadphase.
+     *
+     * @param callback the callback.
+     */
+    public final void forEachOverlap(Broadphase.OverlapCallback callback) {
+        if (requireBroadphase()) {
+            broadphase.forEachOverlap(callback);
+        }
+    }
+
+    /**
+     * Update every entity on this thread, then apply the queued adds and removals.
+     * Entities must use {@link #queueEntityForAdd(Entity)} and {@link #queueEntityForRemoval(Entity)} while updating.
+     * While interest points are set only entities near them are updated, see {@link #addInterestPoint(Entity)}.
+     */
+    public final void updateEntities() {
+        List<Entity> entities = beginUpdate();
+        for (int i = 0, size = entities.size(); i < size; i++) {
+            tickEntity(entities.get(i));
+        }
+        updateTargets = null;
+        doQueueActions();
+    }
+
+    /**
+     * Update every entity in parallel, then apply the queued adds and removals.
+     * <p>
+     * Entities are split into chunks of {@link #setUpdateChunkSize(int)} which are updated on the update pool.
+     * Adds and removals queued while updating are recorded per chunk and applied in chunk order afterwards, so the
+     * result does not depend on which thread updated which chunk. Broadphase updates are deferred and applied once the
+     * chunks are done.
+     * <p>
+     * Entities must only change their own state while updating, anything shared has to be thread safe. From within an
+     * update an entity may call {@link #getEntityAt(double, double)}, the region, radius and nearest queries and
+     * move itself with moveAndCollide or moveAndSlide, these only read shared state and use per thread scratch space.
+     * Adding or removing entities is queued. Anything else on the world is not safe to call while updating in parallel.
+     */
+    public final void updateEntitiesParallel() {
+        List<Entity> entities = beginUpdate();
+        int size = entities.size();
+        int chunkSize = updateChunkSize;
+        int chunks = (size + chunkSize - 1) / chunkSize;
+        if (chunks <= 1) {
+            for (int i = 0; i < size; i++) {
+                tickEntity(entities.get(i));
+            }
+            updateTargets = null;
+            doQueueActions();
+            return;
+        }
+
+        if (chunkCommands.length < chunks) {
+            int old = chunkCommands.length;
+            chunkCommands = Arrays.copyOf(chunkCommands, chunks);
+            for (int i = old; i < chunks; i++) {
+                chunkCommands[i] = new EntityCommandBuffer();
+            }
+        }
+
+        boolean deferBroadphase = broadphase != null;
+        try {
+            updatePool.invoke(new UpdateTask(0, chunks, chunkSize, size, deferBroadphase));
+        } finally {
+            if (deferBroadphase) {
+                for (int i = 0; i < size; i++) {
+                    entities.get(i).setBroadphaseDeferred(false);
+                }
+            }
+
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                applyCommands(chunkCommands[chunk]);
+            }
+            updateTargets = null;
+        }
+        doQueueActions();
+    }
+
+    /**
+     * Advance the world tick and decide which entities are updated.
+     *
+     * @return the entities to update.
+     */
+    private List<Entity> beginUpdate() {
+        worldTick++;
+        updateTargets = updateActivity() ? awakeEntities : worldEntities;
+        return updateTargets;
+    }
+
+    /**
+     * Update an entity if its activity level allows it this tick.
+     * Reduced entities are staggered by their ID so they don't all update on the same tick.
+     *
+     * @param entity the entity.
+     */
+    private void tickEntity(Entity entity) {
+        if (entity.getActivityLevel() == ActivityLevel.REDUCED
+                && Math.floorMod(worldTick + entity.getEntityID(), (long) reducedTickRate) != 0) {
+            return;
+        }
+        entity.updateEntity(entity.markUpdated(worldTick));
+    }
+
+    /**
+     * Classify the entities near the interest points, everything else becomes dormant.
+     * Only the entities found by the broadphase and the ones that were awake last tick are visited.
+     *
+     * @return true if activity levels are in use.
+     */
+    private boolean updateActivity() {
+        boolean enabled = broadphase != null && !interestPoints.isEmpty();
+        if (enabled != activityEnabled) {
+            activityEnabled = enabled;
+            ActivityLevel level = enabled ? ActivityLevel.DORMANT : ActivityLevel.FULL;
+            // set as of the last tick so every entity can still be found this tick.
+            for (int i = 0, size = worldEntities.size(); i < size; i++) {
+                worldEntities.get(i).setActivityLevel(level, worldTick - 1);
+            }
+            awakeEntities.clear();
+        }
+
+        if (!enabled) {
+            return false;
+        }
+
+        List<Entity> previous = awakeEntities;
+        awakeEntities = previousAwakeEntities;
+        previousAwakeEntities = previous;
+
+        double fullSquared = fullActivityRadius * fullActivityRadius;
+        for (int p = 0, points = interestPoints.size(); p < points; p++) {
+            BoundingBox2D point = interestPoints.get(p).getBox2D();
+            double x = point.getCenterX();
+            double y = point.getCenterY();
+
+            int count;
+            while ((count = broadphase.queryRadius(x, y, reducedActivityRadius, activityBuffer)) == activityBuffer.length) {
+                activityBuffer = new Entity[activityBuffer.length << 1];
+            }
+
+            for (int i = 0; i < count; i++) {
+                Entity entity = activityBuffer[i];
+                BoundingBox2D box = entity.getBox2D();
+                double dx = Math.max(0, Math.max(box.getMinX() - x, x - box.getMaxX()));
+                double dy = Math.max(0, Math.max(box.getMinY() - y, y - box.getMaxY()));
+                ActivityLevel level = dx * dx + dy * dy <= fullSquared ? ActivityLevel.FULL : ActivityLevel.REDUCED;
+
+                if (entity.getActivityTick() != worldTick) {
+                    entity.setActivityLevel(level, worldTick);
+                    awakeEntities.add(entity);
+                } else if (level == ActivityLevel.FULL) {
+                    // already found by another interest point, keep the closest level.
+                    entity.setActivityLevel(level, worldTick);
+                }
+                activityBuffer[i] = null;
+            }
+        }
+
+        // anything that was awake but not found anymore goes to sleep. Entities removed since then are skipped, they may
+        // already be back in a pool or in another world.
+        for (int i = 0, size = previous.size(); i < size; i++) {
+            Entity entity = previous.get(i);
+            if (entity.getActivityTick() != worldTick && isResident(entity)) {
+                entity.setActivityLevel(ActivityLevel.DORMANT, worldTick);
+            }
+        }
+        previous.clear();
+        return true;
+    }
+
+    /**
+     * @param entity the entity.
+     * @return true if the entity is in this world.
+     */
+    private boolean isResident(Entity entity) {
+        int slot = entity.getWorldSlot();
+        return slot >= 0 && slot < worldEntities.size() && worldEntities.get(slot) == entity;
+    }
+
+    /**
+     * Add a point of interest, usually the player. Once a world has an interest point and a broadphase, only entities
+     * near an interest point are updated:
+     * entities within the full radius every tick, entities within the reduced radius every few ticks and everything
+     * further away not at all. See {@link #setActivityRadii(double, double)}.
+     *
+     * @param entity the entity to use as the interest point.
+     */
+    public final void addInterestPoint(Entity entity) {
+        if (!interestPoints.contains(entity)) {
+            interestPoints.add(entity);
+        }
+    }
+
+    /**
+     * Remove a point of interest. Without any interest points every entity is updated every tick again.
+     * Interest points are removed automatically when their entity is removed from this world.
+     *
+     * @param entity the entity.
+     */
+    public final void removeInterestPoint(Entity entity) {
+        interestPoints.remove(entity);
+    }
+
+    /**
+     * Set the distances from an interest point that decide the activity level of an entity,
+     * 640 and 1280 by default.
+     *
+     * @param fullRadius    entities within this distance are updated every tick.
+     * @param reducedRadius entities within this distance are updated every {@link #setReducedTickRate(int)} ticks.
+     */
+    public final void setActivityRadii(double fullRadius, double reducedRadius) {
+        fullActivityRadius = fullRadius;
+        reducedActivityRadius = Math.max(fullRadius, reducedRadius);
+    }
+
+    /**
+     * Set how often entities with a reduced activity level are updated, every 4 ticks by default.
+     *
+     * @param ticks the amount of ticks between updates.
+     */
+    public final void setReducedTickRate(int ticks) {
+        reducedTickRate = Math.max(1, ticks);
+    }
+
+    /**
+     * @return the amount of entities that were not dormant in the last update.
+     */
+    public final int getAwakeEntityCount() {
+        return activityEnabled ? awakeEntities.size() : worldEntities.size();
+    }
+
+    /**
+     * Set the pool entities are updated on by {@link #updateEntitiesParallel()}, the common pool by default.
+     *
+     * @param pool the pool.
+     */
+    public final void setUpdatePool(ForkJoinPool pool) {
+        updatePool = pool;
+    }
+
+    /**
+     * Set how many entities are updated together in {@link #updateEntitiesParallel()}, 256 by default.
+     *
+     * @param chunkSize the amount of entities per chunk.
+     */
+    public final void setUpdateChunkSize(int chunkSize) {
+        updateChunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Update a single chunk of entities, recording queued adds and removals in the chunk's buffer.
+     */
+    private void updateChunk(int chunk, int chunkSize, int size, boolean deferBroadphase) {
+        int end = Math.min(size, (chunk + 1) * chunkSize);
+        // a worker joining other work may steal another chunk inside this one, so restore instead of clearing.
+        EntityCommandBuffer previous = activeCommands.get();
+        activeCommands.set(chunkCommands[chunk]);
+        try {
+            for (int i = chunk * chunkSize; i < end; i++) {
+                Entity entity = updateTargets.get(i);
+                if (deferBroadphase) {
+                    entity.setBroadphaseDeferred(true);
+                }
+                tickEntity(entity);
+            }
+        } finally {
+            if (previous == null) {
+                activeCommands.remove();
+            } else {
+                activeCommands.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Splits a range of chunks in half until a single chunk is left.
+     */
+    private final class UpdateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+        private final int chunkSize, size;
+        private final boolean deferBroadphase;
+
+        private UpdateTask(int from, int to, int chunkSize, int size, boolean deferBroadphase) {
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.size = size;
+            this.deferBroadphase = deferBroadphase;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                updateChunk(from, chunkSize, size, deferBroadphase);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new UpdateTask(from, middle, chunkSize, size, deferBroadphase),
+                    new UpdateTask(middle, to, chunkSize, size, deferBroadphase));
+        }
+    }
+
+    /**
+     * Move an entity, stopping at the first solid tile in the way.
+     *
+     * @param entity the entity.
+     * @param dx     the distance to move on the X axis.
+     * @param dy     the distance to move on the Y axis.
+     * @return the collision result.
+     */
+    public final TileCollision moveAndCollide(Entity entity, double dx, double dy) {
+        TileCollision result = new TileCollision();
+        moveAndCollide(entity, dx, dy, result);
+        return result;
+    }
+
+    /**
+     * Move an entity, stopping at the first solid tile in the way.
+     * Fast entities can't pass through walls, the whole path is checked.
+     *
+     * @param entity the entity.
+     * @param dx     the distance to move on the X axis.
+     * @param dy     the distance to move on the Y axis.
+     * @param result the result to fill, so it can be reused.
+     * @return true if a solid tile was hit.
+     */
+    public final boolean moveAndCollide(Entity entity, double dx, double dy, TileCollision result) {
+        BoundingBox2D sweepBox = sweepBoxes.get();
+        sweepBox.set(entity.getX(), entity.getY(), entity.getWidth(), entity.getHeight());
+        boolean hit = sweep(sweepBox, dx, dy, result);
+        moveBy(entity, result.getMovedX(), result.getMovedY());
+        return hit;
+    }
+
+    /**
+     * Move an entity, sliding along solid tiles instead of stopping at them.
+     *
+     * @param entity the entity.
+     * @param dx     the distance to move on the X axis.
+     * @param dy     the distance to move on the Y axis.
+     * @return the collision result.
+     */
+    public final TileCollision moveAndSlide(Entity entity, double dx, double dy) {
+        TileCollision result = new TileCollision();
+        moveAndSlide(entity, dx, dy, result);
+        return result;
+    }
+
+    /**
+     * Move an entity, sliding along solid tiles instead of stopping at them.
+     * When a tile is hit the rest of the motion continues along the tile's surface.
+     *
+     * @param entity the entity.
+     * @param dx     the distance to move on the X axis.
+     * @param dy     the distance to move on the Y axis.
+     * @param result the result to fill, the normal and tile are those of the last hit,
+     *               the time that of the first hit and the distance moved is the total.
+     * @return true if a solid tile was hit.
+     */
+    public final boolean moveAndSlide(Entity entity, double dx, double dy, TileCollision result) {
+        BoundingBox2D sweepBox = sweepBoxes.get();
+        sweepBox.set(entity.getX(), entity.getY(), entity.getWidth(), entity.getHeight());
+
+        double movedX = 0, movedY = 0, time = 1;
+        double normalX = 0, normalY = 0;
+        Tile tile = null;
+        // at most one hit per axis, the third sweep only covers what is left.
+        for (int i = 0; i < 3 && (dx != 0 || dy != 0); i++) {
+            if (!sweep(sweepBox, dx, dy, result)) {
+                movedX += result.getMovedX();
+                movedY += result.getMovedY();
+                break;
+            }
+
+            if (tile == null) {
+                time = result.getTime();
+            }
+            normalX = result.getNormalX();
+            normalY = result.getNormalY();
+            tile = result.getTile();
+
+            movedX += result.getMovedX();
+            movedY += result.getMovedY();
+            sweepBox.set(sweepBox.getMinX() + result.getMovedX(), sweepBox.getMinY() + result.getMovedY());
+
+            // keep the remaining motion along the surface.
+            double remaining = 1 - result.getTime();
+            dx = normalX != 0 ? 0 : dx * remaining;
+            dy = normalY != 0 ? 0 : dy * remaining;
+        }
+
+        result.reset();
+        if (tile != null) {
+            result.setHit(time, normalX, normalY, tile);
+        }
+        result.setMoved(movedX, movedY);
+        moveBy(entity, movedX, movedY);
+        return tile != null;
+    }
+
+    private void moveBy(Entity entity, double dx, double dy) {
+        if (dx == 0 && dy == 0) {
+            return;
+        }
+        entity.setX(entity.getX() + dx);
+        entity.setY(entity.getY() + dy);
+        entity.updateBoundingBox();
+    }
+
+    private boolean requireBroadphase() {
+        if (broadphase == null) {
+            DebugLogger.e("World " + worldName + " has no broadphase, use World#setBroadphase first.");
+            return false;
+        }
+        return true;
     }
 
     /**
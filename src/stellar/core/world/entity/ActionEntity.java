@@ -2,6 +2,10 @@ package stellar.core.world.entity;
 
 import stellar.core.entity.Entity;
 
+/**
+ * @deprecated queued adds and removals are stored in an {@link EntityCommandQueue}.
+ */
+@Deprecated
 public class ActionEntity {
 
     public enum EntityAction {
@@ -0,0 +1,21 @@
+package stellar.core.world.entity;
+
+/**
+ * How often an entity is updated, decided by its distance to the interest points of its world.
+ */
+public enum ActivityLevel {
+
+    /**
+     * Updated every tick.
+     */
+    FULL,
+    /**
+     * Updated every few ticks, with the amount of ticks that passed.
+     */
+    REDUCED,
+    /**
+     * Not updated at all.
+     */
+    DORMANT
+
+}
@@ -0,0 +1,75 @@
+package stellar.core.world.entity;
+
+import stellar.core.entity.Entity;
+
+import java.util.Arrays;
+
+/**
+ * Records entity adds and removals in order so they can be applied later, used to keep the entity list unchanged
+ * while entities are being updated. A buffer is only ever written by one thread at a time.
+ */
+public final class EntityCommandBuffer {
+
+    private Entity[] entities = new Entity[16];
+    private boolean[] adds = new boolean[16];
+    private int size;
+
+    /**
+     * Record an entity to be added.
+     *
+     * @param entity the entity.
+     */
+    public void add(Entity entity) {
+        record(entity, true);
+    }
+
+    /**
+     * Record an entity to be removed.
+     *
+     * @param entity the entity.
+     */
+    public void remove(Entity entity) {
+        record(entity, false);
+    }
+
+    private void record(Entity entity, boolean add) {
+        if (size == entities.length) {
+            entities = Arrays.copyOf(entities, size << 1);
+            adds = Arrays.copyOf(adds, size << 1);
+        }
+        entities[size] = entity;
+        adds[size++] = add;
+    }
+
+    /**
+     * @param index the index of the command.
+     * @return the entity of the command.
+     */
+    public Entity getEntity(int index) {
+        return entities[index];
+    }
+
+    /**
+     * @param index the index of the command.
+     * @return true if the command adds the entity, false if it removes it.
+     */
+    public boolean isAdd(int index) {
+        return adds[index];
+    }
+
+    /**
+     * @return the amount of recorded commands.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove every command.
+     */
+    public void clear() {
+        Arrays.fill(entities, 0, size, null);
+        size = 0;
+    }
+
+}
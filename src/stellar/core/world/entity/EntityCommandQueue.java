@@ -0,0 +1,158 @@
+package stellar.core.world.entity;
+
+import stellar.core.entity.Entity;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free queue of entity adds and removals, any thread may queue commands but only one thread may drain them.
+ * <p>
+ * Commands are stored in a bounded ring without allocating. When the ring is full commands go to an overflow queue
+ * until the next drain, commands queued by the same thread are always drained in order.
+ */
+public final class EntityCommandQueue {
+
+    private final int mask;
+    // a slot can be written when its sequence equals the tail position, read when it is one past the head position.
+    private final AtomicLongArray sequences;
+    private final Entity[] entities;
+    private final boolean[] adds;
+
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    private final ConcurrentLinkedQueue<OverflowCommand> overflow = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger overflowCount = new AtomicInteger();
+
+    public EntityCommandQueue() {
+        this(4096);
+    }
+
+    /**
+     * @param capacity the amount of commands the ring holds, rounded up to a power of two.
+     */
+    public EntityCommandQueue(int capacity) {
+        capacity = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = capacity - 1;
+        sequences = new AtomicLongArray(capacity);
+        entities = new Entity[capacity];
+        adds = new boolean[capacity];
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Queue an entity to be added.
+     *
+     * @param entity the entity.
+     */
+    public void offerAdd(Entity entity) {
+        offer(entity, true);
+    }
+
+    /**
+     * Queue an entity to be removed.
+     *
+     * @param entity the entity.
+     */
+    public void offerRemove(Entity entity) {
+        offer(entity, false);
+    }
+
+    private void offer(Entity entity, boolean add) {
+        // once anything overflowed everything overflows until it is drained, to keep the order.
+        if (overflowCount.get() == 0) {
+            long position = tail.get();
+            while (true) {
+                int slot = (int) position & mask;
+                long difference = sequences.get(slot) - position;
+                if (difference == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        entities[slot] = entity;
+                        adds[slot] = add;
+                        // publishes the slot to the consumer.
+                        sequences.set(slot, position + 1);
+                        return;
+                    }
+                    position = tail.get();
+                } else if (difference < 0) {
+                    // the ring is full.
+                    break;
+                } else {
+                    position = tail.get();
+                }
+            }
+        }
+
+        overflowCount.incrementAndGet();
+        overflow.add(new OverflowCommand(entity, add, tail.get()));
+    }
+
+    /**
+     * Move every queued command into a buffer, in order. Only one thread may drain at a time.
+     * Commands that are still being written by another thread are left for the next drain.
+     *
+     * @param buffer the buffer to append to.
+     * @return the amount of commands drained.
+     */
+    public int drainTo(EntityCommandBuffer buffer) {
+        int count = 0;
+        while (true) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) {
+                break;
+            }
+
+            Entity entity = entities[slot];
+            if (adds[slot]) {
+                buffer.add(entity);
+            } else {
+                buffer.remove(entity);
+            }
+            entities[slot] = null;
+            // hand the slot back to the producers for the next lap.
+            sequences.set(slot, head + mask + 1);
+            head++;
+            count++;
+        }
+
+        // an overflowed command waits for every ring slot claimed before it, which may still be being written.
+        OverflowCommand command;
+        while ((command = overflow.peek()) != null && command.position <= head) {
+            overflow.poll();
+            if (command.add) {
+                buffer.add(command.entity);
+            } else {
+                buffer.remove(command.entity);
+            }
+            overflowCount.decrementAndGet();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the amount of commands the ring holds before overflowing.
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    private static final class OverflowCommand {
+        private final Entity entity;
+        private final boolean add;
+        // the ring tail when this command was queued.
+        private final long position;
+
+        private OverflowCommand(Entity entity, boolean add, long position) {
+            this.entity = entity;
+            this.add = add;
+            this.position = position;
+        }
+    }
+
+}
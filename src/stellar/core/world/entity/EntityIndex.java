@@ -0,0 +1,160 @@
+package stellar.core.world.entity;
+
+import com.sun.istack.internal.Nullable;
+import stellar.core.entity.Entity;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash index from entity ID to entity, IDs are never boxed.
+ * Uses linear probing with backward shift deletion so there are no tombstones to clean up.
+ */
+public final class EntityIndex {
+
+    private int[] keys;
+    private Entity[] values;
+    private int mask;
+    private int size;
+
+    public EntityIndex() {
+        this(64);
+    }
+
+    /**
+     * @param expected the expected amount of entities.
+     */
+    public EntityIndex(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1) << 1);
+        keys = new int[capacity];
+        values = new Entity[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Add an entity.
+     *
+     * @param entity the entity.
+     * @return false if the ID is already indexed, also when it belongs to this same entity.
+     */
+    public boolean put(Entity entity) {
+        int id = entity.getEntityID();
+        int slot = slot(id);
+        while (values[slot] != null) {
+            if (keys[slot] == id) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = id;
+        values[slot] = entity;
+        if (++size > (mask + 1) * 3 / 4) {
+            resize();
+        }
+        return true;
+    }
+
+    /**
+     * @param id the entity ID.
+     * @return the entity with the ID, or null.
+     */
+    @Nullable
+    public Entity get(int id) {
+        int slot = slot(id);
+        Entity entity;
+        while ((entity = values[slot]) != null) {
+            if (keys[slot] == id) {
+                return entity;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Remove an entity, only if it is the one indexed under its ID.
+     *
+     * @param entity the entity.
+     * @return true if the entity was removed.
+     */
+    public boolean remove(Entity entity) {
+        int id = entity.getEntityID();
+        int slot = slot(id);
+        while (values[slot] != null) {
+            if (keys[slot] == id) {
+                if (values[slot] != entity) {
+                    return false;
+                }
+                delete(slot);
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Remove every entity.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * @return the amount of indexed entities.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Empty a slot and shift the following entries of the probe sequence back.
+     */
+    private void delete(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != null) {
+            int home = slot(keys[next]);
+            // move the entry if its home is not in the range (gap, next].
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+
+        values[gap] = null;
+        size--;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        Entity[] oldValues = values;
+
+        int capacity = oldKeys.length << 1;
+        keys = new int[capacity];
+        values = new Entity[capacity];
+        mask = capacity - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == null) {
+                continue;
+            }
+
+            int slot = slot(oldKeys[i]);
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private int slot(int id) {
+        int hash = id * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+}
@@ -0,0 +1,224 @@
+package stellar.core.world.entity;
+
+import stellar.core.entity.Entity;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool of reusable entities of one type, for entities that are spawned and removed often.
+ * <p>
+ * Entities are obtained with {@link #obtain(double, double, int)} and go back to the pool when they are removed
+ * from a world. Every thread keeps a small cache of free entities so spawning from several threads rarely contends,
+ * caches are refilled from and flushed to a shared pool in batches.
+ *
+ * @param <T> the type of entity.
+ */
+public final class EntityPool<T extends Entity> {
+
+    private final Supplier<T> factory;
+    private final int localCapacity;
+
+    // free entities shared between threads, guarded by itself.
+    private final Entity[] shared;
+    private int sharedSize;
+
+    private final ThreadLocal<LocalCache> caches = new ThreadLocal<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param factory  creates new entities when the pool is empty.
+     * @param capacity the maximum amount of free entities in the shared pool.
+     */
+    public EntityPool(Supplier<T> factory, int capacity) {
+        this(factory, capacity, 32);
+    }
+
+    /**
+     * @param factory       creates new entities when the pool is empty.
+     * @param capacity      the maximum amount of free entities in the shared pool.
+     * @param localCapacity the maximum amount of free entities cached by each thread.
+     */
+    public EntityPool(Supplier<T> factory, int capacity, int localCapacity) {
+        this.factory = factory;
+        this.shared = new Entity[Math.max(0, capacity)];
+        this.localCapacity = Math.max(1, localCapacity);
+    }
+
+    /**
+     * Fill the shared pool ahead of time so the first spawns do not allocate.
+     *
+     * @param count the amount of entities to create, limited by the capacity.
+     */
+    public void preallocate(int count) {
+        for (int i = 0; i < count; i++) {
+            T entity = factory.get();
+            entity.setPool(this, true);
+            synchronized (shared) {
+                if (sharedSize == shared.length) {
+                    entity.setPool(null, false);
+                    return;
+                }
+                shared[sharedSize++] = entity;
+            }
+        }
+    }
+
+    /**
+     * Get a free entity, or create one if the pool is empty. The entity is reset to the given position and ID.
+     *
+     * @param x        the x position.
+     * @param y        the y position.
+     * @param entityID the unique identifier.
+     * @return the entity.
+     */
+    @SuppressWarnings("unchecked")
+    public T obtain(double x, double y, int entityID) {
+        LocalCache cache = getCache();
+        if (cache.size == 0) {
+            refill(cache);
+        }
+
+        T entity;
+        if (cache.size > 0) {
+            entity = (T) cache.entities[--cache.size];
+            cache.entities[cache.size] = null;
+            hits.increment();
+        } else {
+            entity = factory.get();
+            misses.increment();
+        }
+
+        entity.setPool(this, false);
+        entity.reset(x, y, entityID);
+        return entity;
+    }
+
+    /**
+     * Return an entity to this pool. This is done by the world when a pooled entity is removed.
+     * Entities that are not owned by this pool or are already free are ignored.
+     *
+     * @param entity the entity.
+     */
+    public void free(Entity entity) {
+        if (entity.getPool() != this || entity.isFree()) {
+            return;
+        }
+
+        entity.setPool(this, true);
+        LocalCache cache = getCache();
+        if (cache.size == cache.entities.length) {
+            flush(cache);
+        }
+        cache.entities[cache.size++] = entity;
+    }
+
+    /**
+     * Move half a batch of entities from the shared pool into a cache.
+     *
+     * @param cache the empty cache.
+     */
+    private void refill(LocalCache cache) {
+        synchronized (shared) {
+            int count = Math.min(sharedSize, Math.max(1, localCapacity >> 1));
+            for (int i = 0; i < count; i++) {
+                cache.entities[cache.size++] = shared[--sharedSize];
+                shared[sharedSize] = null;
+            }
+        }
+    }
+
+    /**
+     * Move half of a full cache into the shared pool, entities that do not fit are dropped.
+     *
+     * @param cache the full cache.
+     */
+    private void flush(LocalCache cache) {
+        int count = Math.max(1, cache.size >> 1);
+        int moved;
+        synchronized (shared) {
+            moved = Math.min(count, shared.length - sharedSize);
+            for (int i = 0; i < moved; i++) {
+                shared[sharedSize++] = cache.entities[--cache.size];
+                cache.entities[cache.size] = null;
+            }
+        }
+
+        for (int i = moved; i < count; i++) {
+            Entity entity = cache.entities[--cache.size];
+            cache.entities[cache.size] = null;
+            entity.setPool(null, false);
+            dropped.increment();
+        }
+    }
+
+    private LocalCache getCache() {
+        LocalCache cache = caches.get();
+        if (cache == null) {
+            cache = new LocalCache(localCapacity);
+            caches.set(cache);
+        }
+        return cache;
+    }
+
+    /**
+     * @return the amount of entities obtained from the pool instead of created.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the amount of entities created because the pool was empty.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the fraction (0 to 1) of obtained entities that came from the pool, 0 if none were obtained.
+     */
+    public double getHitRate() {
+        long hits = this.hits.sum();
+        long total = hits + misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the amount of freed entities that were dropped because the pool was full.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return the amount of free entities in the shared pool, not counting the caches of each thread.
+     */
+    public int getSharedSize() {
+        synchronized (shared) {
+            return sharedSize;
+        }
+    }
+
+    /**
+     * Reset the hit, miss and drop counts.
+     */
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        dropped.reset();
+    }
+
+    private static final class LocalCache {
+        private final Entity[] entities;
+        private int size;
+
+        private LocalCache(int capacity) {
+            entities = new Entity[capacity];
+        }
+    }
+
+}
@@ -0,0 +1,264 @@
+package stellar.core.world.entity;
+
+import stellar.core.entity.Entity;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the hot fields of entities (position, velocity, size and flags) in dense primitive arrays.
+ * <p>
+ * Each attached entity gets a stable handle, the arrays themselves are kept packed by moving the last entity into
+ * the gap left by a removed one, so bulk loops like {@link #integrate(double)} walk memory linearly.
+ * While attached, an entity reads and writes its fields through the store.
+ */
+public final class EntityStore {
+
+    private double[] x, y, velocityX, velocityY, width, height;
+    private int[] flags;
+    private Entity[] entities;
+    private int[] indexToHandle;
+
+    private int[] handleToIndex;
+    private int[] freeHandles;
+    private int freeCount, handleCount;
+
+    private int size;
+
+    public EntityStore() {
+        this(256);
+    }
+
+    /**
+     * @param capacity the initial amount of entities.
+     */
+    public EntityStore(int capacity) {
+        capacity = Math.max(1, capacity);
+        x = new double[capacity];
+        y = new double[capacity];
+        velocityX = new double[capacity];
+        velocityY = new double[capacity];
+        width = new double[capacity];
+        height = new double[capacity];
+        flags = new int[capacity];
+        entities = new Entity[capacity];
+        indexToHandle = new int[capacity];
+        handleToIndex = new int[capacity];
+        freeHandles = new int[capacity];
+    }
+
+    /**
+     * Add an entity. Do not call this directly, use Entity#attach.
+     *
+     * @param entity the entity.
+     * @return the handle of the entity.
+     */
+    public int add(Entity entity) {
+        if (size == entities.length) {
+            growEntities();
+        }
+
+        int handle;
+        if (freeCount > 0) {
+            handle = freeHandles[--freeCount];
+        } else {
+            if (handleCount == handleToIndex.length) {
+                handleToIndex = Arrays.copyOf(handleToIndex, handleToIndex.length << 1);
+                freeHandles = Arrays.copyOf(freeHandles, handleToIndex.length);
+            }
+            handle = handleCount++;
+        }
+
+        int index = size++;
+        handleToIndex[handle] = index;
+        indexToHandle[index] = handle;
+        entities[index] = entity;
+        return handle;
+    }
+
+    /**
+     * Remove an entity. Do not call this directly, use Entity#detach.
+     *
+     * @param handle the handle of the entity.
+     */
+    public void remove(int handle) {
+        int index = handleToIndex[handle];
+        int last = --size;
+
+        if (index != last) {
+            // move the last entity into the gap.
+            x[index] = x[last];
+            y[index] = y[last];
+            velocityX[index] = velocityX[last];
+            velocityY[index] = velocityY[last];
+            width[index] = width[last];
+            height[index] = height[last];
+            flags[index] = flags[last];
+            entities[index] = entities[last];
+
+            int movedHandle = indexToHandle[last];
+            indexToHandle[index] = movedHandle;
+            handleToIndex[movedHandle] = index;
+        }
+
+        entities[last] = null;
+        handleToIndex[handle] = -1;
+        freeHandles[freeCount++] = handle;
+    }
+
+    /**
+     * Move every entity by its velocity.
+     *
+     * @param delta the amount of time that passed, in the same unit as the velocities.
+     */
+    public void integrate(double delta) {
+        final double[] x = this.x, y = this.y, velocityX = this.velocityX, velocityY = this.velocityY;
+        for (int i = 0; i < size; i++) {
+            x[i] += velocityX[i] * delta;
+            y[i] += velocityY[i] * delta;
+        }
+    }
+
+    /**
+     * Update the bounding boxes of every entity from the store.
+     */
+    public void syncBoundingBoxes() {
+        for (int i = 0; i < size; i++) {
+            // goes through the entity so any broadphase is notified too.
+            entities[i].updateBoundingBox();
+        }
+    }
+
+    /**
+     * @param a the handle of the first entity.
+     * @param b the handle of the second entity.
+     * @return if the bounds of the entities overlap.
+     */
+    public boolean overlaps(int a, int b) {
+        int i = handleToIndex[a], j = handleToIndex[b];
+        return x[i] < x[j] + width[j] && x[j] < x[i] + width[i] && y[i] < y[j] + height[j] && y[j] < y[i] + height[i];
+    }
+
+    /**
+     * @param handle the handle.
+     * @return the dense index of the entity, valid until the next removal.
+     */
+    public int indexOf(int handle) {
+        return handleToIndex[handle];
+    }
+
+    /**
+     * @param index the dense index.
+     * @return the entity at the index.
+     */
+    public Entity getEntity(int index) {
+        return entities[index];
+    }
+
+    /**
+     * @return the amount of entities.
+     */
+    public int size() {
+        return size;
+    }
+
+    public double getX(int handle) {
+        return x[handleToIndex[handle]];
+    }
+
+    public void setX(int handle, double value) {
+        x[handleToIndex[handle]] = value;
+    }
+
+    public double getY(int handle) {
+        return y[handleToIndex[handle]];
+    }
+
+    public void setY(int handle, double value) {
+        y[handleToIndex[handle]] = value;
+    }
+
+    public double getVelocityX(int handle) {
+        return velocityX[handleToIndex[handle]];
+    }
+
+    public void setVelocityX(int handle, double value) {
+        velocityX[handleToIndex[handle]] = value;
+    }
+
+    public double getVelocityY(int handle) {
+        return velocityY[handleToIndex[handle]];
+    }
+
+    public void setVelocityY(int handle, double value) {
+        velocityY[handleToIndex[handle]] = value;
+    }
+
+    public double getWidth(int handle) {
+        return width[handleToIndex[handle]];
+    }
+
+    public void setWidth(int handle, double value) {
+        width[handleToIndex[handle]] = value;
+    }
+
+    public double getHeight(int handle) {
+        return height[handleToIndex[handle]];
+    }
+
+    public void setHeight(int handle, double value) {
+        height[handleToIndex[handle]] = value;
+    }
+
+    public int getFlags(int handle) {
+        return flags[handleToIndex[handle]];
+    }
+
+    public void setFlags(int handle, int value) {
+        flags[handleToIndex[handle]] = value;
+    }
+
+    /**
+     * The raw arrays are exposed for bulk systems, entries at or above {@link #size()} are unused.
+     */
+    public double[] xArray() {
+        return x;
+    }
+
+    public double[] yArray() {
+        return y;
+    }
+
+    public double[] velocityXArray() {
+        return velocityX;
+    }
+
+    public double[] velocityYArray() {
+        return velocityY;
+    }
+
+    public double[] widthArray() {
+        return width;
+    }
+
+    public double[] heightArray() {
+        return height;
+    }
+
+    public int[] flagsArray() {
+        return flags;
+    }
+
+    private void growEntities() {
+        int capacity = entities.length << 1;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        velocityX = Arrays.copyOf(velocityX, capacity);
+        velocityY = Arrays.copyOf(velocityY, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        entities = Arrays.copyOf(entities, capacity);
+        indexToHandle = Arrays.copyOf(indexToHandle, capacity);
+    }
+
+}
@@ -0,0 +1,165 @@
+package stellar.core.world.map;
+
+import com.sun.istack.internal.Nullable;
+import stellar.core.tile.Tile;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash index from grid cell to tile. The cell coordinates are packed into a single long key so
+ * lookups never allocate, unlike the Location keys of the tile map.
+ */
+public final class TileCellIndex {
+
+    private long[] keys;
+    private Tile[] values;
+    private int mask;
+    private int size;
+
+    public TileCellIndex() {
+        this(256);
+    }
+
+    /**
+     * @param expected the expected amount of tiles.
+     */
+    public TileCellIndex(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1) << 1);
+        keys = new long[capacity];
+        values = new Tile[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Set the tile of a cell, replacing any previous tile.
+     *
+     * @param cellX the cell X.
+     * @param cellY the cell Y.
+     * @param tile  the tile.
+     */
+    public void put(int cellX, int cellY, Tile tile) {
+        long key = key(cellX, cellY);
+        int slot = slot(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                values[slot] = tile;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = tile;
+        if (++size > (mask + 1) * 3 / 4) {
+            resize();
+        }
+    }
+
+    /**
+     * @param cellX the cell X.
+     * @param cellY the cell Y.
+     * @return the tile in the cell, or null.
+     */
+    @Nullable
+    public Tile get(int cellX, int cellY) {
+        long key = key(cellX, cellY);
+        int slot = slot(key);
+        Tile tile;
+        while ((tile = values[slot]) != null) {
+            if (keys[slot] == key) {
+                return tile;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Remove the tile of a cell.
+     *
+     * @param cellX the cell X.
+     * @param cellY the cell Y.
+     * @return true if the cell had a tile.
+     */
+    public boolean remove(int cellX, int cellY) {
+        long key = key(cellX, cellY);
+        int slot = slot(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                delete(slot);
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Remove every tile.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * @return the amount of indexed cells.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Empty a slot and shift the following entries of the probe sequence back.
+     */
+    private void delete(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != null) {
+            int home = slot(keys[next]);
+            // move the entry if its home is not in the range (gap, next].
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+
+        values[gap] = null;
+        size--;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        Tile[] oldValues = values;
+
+        int capacity = oldKeys.length << 1;
+        keys = new long[capacity];
+        values = new Tile[capacity];
+        mask = capacity - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == null) {
+                continue;
+            }
+
+            int slot = slot(oldKeys[i]);
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private static long key(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+}
@@ -3,6 +3,7 @@ package stellar.core.world.map;
 import com.sun.istack.internal.Nullable;
 import stellar.core.entity.Entity;
 import stellar.core.location.Location;
+import stellar.core.sprite.SpriteManager;
 import stellar.core.tile.Tile;
 import stellar.log.DebugLogger;
 
@@ -21,6 +22,28 @@ public abstract class WorldRenderer extends WorldTileMap {
      */
     protected final Map<Location, Tile> visibleTileMap = new HashMap<>();
 
+    /**
+     * The sprite manager mip chains are taken from, null if mipmapping is disabled.
+     */
+    protected SpriteManager mipmapSource;
+
+    /**
+     * Enable mipmapping. Textures drawn smaller than their real size will be drawn from the nearest mip level instead
+     * of being minified from the full resolution texture.
+     *
+     * @param spriteManager the sprite manager to get mip chains from.
+     */
+    public final void enableMipmapping(SpriteManager spriteManager) {
+        mipmapSource = spriteManager;
+    }
+
+    /**
+     * Disable mipmapping.
+     */
+    public final void disableMipmapping() {
+        mipmapSource = null;
+    }
+
     /**
      * Draw all entities in the world.
      *
@@ -153,6 +176,14 @@ public abstract class WorldRenderer extends WorldTileMap {
             graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
         }
         graphics.translate(x, y);
+
+        if (mipmapSource != null) {
+            // the scale the texture ends up at on screen, including any camera zoom.
+            double scale = Math.hypot(proper.getScaleX(), proper.getShearY()) * width / texture.getWidth();
+            if (scale < 1.0) {
+                texture = mipmapSource.getMipmap(texture).getLevel(texture, scale);
+            }
+        }
         graphics.scale(width / texture.getWidth(), height / texture.getHeight());
 
         //draw
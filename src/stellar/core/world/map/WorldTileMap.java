@@ -2,6 +2,7 @@ package stellar.core.world.map;
 
 import com.sun.istack.internal.Nullable;
 import stellar.core.collision.BoundingBox2D;
+import stellar.core.collision.TileCollision;
 import stellar.core.location.Location;
 import stellar.core.tile.Tile;
 import stellar.core.utilities.BasicTimer;
@@ -21,9 +22,19 @@ public abstract class WorldTileMap {
         UP, DOWN, LEFT, RIGHT
     }
 
+    /**
+     * Used to nudge coordinates that land exactly on a cell edge to the correct side.
+     */
+    private static final double EPSILON = 1e-9;
+
     protected final Map<Location, Tile> tileMap = new HashMap<>();
     protected double tileWidth, tileHeight;
 
+    /**
+     * Every tile by the grid cell it is in, tiles are expected to be aligned to a grid of the tile size.
+     */
+    protected final TileCellIndex tileCells = new TileCellIndex();
+
     /**
      * Add a tile. The tiles bounding box is created in this method.
      *
@@ -32,6 +43,7 @@ public abstract class WorldTileMap {
      * @param tile the tile.
      */
     public final void setTile(double x, double y, Tile tile) {
+        boolean resized = tileWidth != tile.getWidth() || tileHeight != tile.getHeight();
         tileWidth = tile.getWidth();
         tileHeight = tile.getHeight();
 
@@ -41,6 +53,14 @@ public abstract class WorldTileMap {
 
         BoundingBox2D box = new BoundingBox2D(x, y, tileWidth, tileHeight);
         tileMap.put(new Location(x, y, box), tile);
+
+        if (resized && tileCells.size() > 0) {
+            // the grid changed, index every tile again.
+            tileCells.clear();
+            tileMap.forEach((location, value) -> tileCells.put(cellX(location.getX()), cellY(location.getY()), value));
+        } else {
+            tileCells.put(cellX(x), cellY(y), tile);
+        }
     }
 
     /**
@@ -122,7 +142,9 @@ public abstract class WorldTileMap {
             return;
         }
         //remove the tile.
-        tileMap.remove(tile.getLocation(), tile);
+        if (tileMap.remove(tile.getLocation(), tile)) {
+            tileCells.remove(cellX(x), cellY(y));
+        }
     }
 
     /**
@@ -218,4 +240,125 @@ public abstract class WorldTileMap {
         return tile;
     }
 
+    /**
+     * Find the tile at the X and Y coordinate without scanning the tile map.
+     *
+     * @param x the X coordinate.
+     * @param y the Y coordinate.
+     * @return the tile whose cell contains the coordinates, or null.
+     */
+    @Nullable
+    public final Tile getTileAt(double x, double y) {
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            return null;
+        }
+        return tileCells.get(cellX(x), cellY(y));
+    }
+
+    /**
+     * Sweep a bounding box along a motion and find the first solid tile it would hit.
+     * Only the cells the leading edges of the box move into are checked, so the cost depends on the distance moved
+     * and not on the size of the map. Solid tiles the box already overlaps are ignored so it can move out of them.
+     * Nothing is moved, the result holds how far the box can travel.
+     *
+     * @param box    the bounding box.
+     * @param dx     the motion on the X axis.
+     * @param dy     the motion on the Y axis.
+     * @param result the result to fill.
+     * @return true if a solid tile was hit.
+     */
+    public final boolean sweep(BoundingBox2D box, double dx, double dy, TileCollision result) {
+        result.reset();
+        if ((dx == 0 && dy == 0) || tileWidth <= 0 || tileHeight <= 0) {
+            result.setMoved(dx, dy);
+            return false;
+        }
+
+        final double minX = box.getMinX(), minY = box.getMinY(), maxX = box.getMaxX(), maxY = box.getMaxY();
+
+        // the cells the box currently covers, the leading side of each range only ever grows.
+        int columnMin = cellX(minX + EPSILON * tileWidth);
+        int columnMax = Math.max(columnMin, (int) Math.ceil(maxX / tileWidth - EPSILON) - 1);
+        int rowMin = cellY(minY + EPSILON * tileHeight);
+        int rowMax = Math.max(rowMin, (int) Math.ceil(maxY / tileHeight - EPSILON) - 1);
+
+        final int stepX = dx > 0 ? 1 : dx < 0 ? -1 : 0;
+        final int stepY = dy > 0 ? 1 : dy < 0 ? -1 : 0;
+
+        while (true) {
+            // the time at which the leading edge on each axis reaches the next cell edge.
+            double boundaryX = stepX > 0 ? (columnMax + 1) * tileWidth : columnMin * tileWidth;
+            double boundaryY = stepY > 0 ? (rowMax + 1) * tileHeight : rowMin * tileHeight;
+            double timeX = stepX == 0 ? Double.POSITIVE_INFINITY : Math.max(0, (boundaryX - (stepX > 0 ? maxX : minX)) / dx);
+            double timeY = stepY == 0 ? Double.POSITIVE_INFINITY : Math.max(0, (boundaryY - (stepY > 0 ? maxY : minY)) / dy);
+
+            if (timeX > 1 && timeY > 1) {
+                result.setMoved(dx, dy);
+                return false;
+            }
+
+            if (timeX <= timeY) {
+                double time = timeX;
+                int column = stepX > 0 ? columnMax + 1 : columnMin - 1;
+
+                // rows covered by the box at the time of crossing, the trailing edge may have left some.
+                int from = stepY < 0 ? rowMin : cellY(minY + dy * time + EPSILON * tileHeight);
+                int to = stepY > 0 ? rowMax : Math.max(from, (int) Math.ceil((maxY + dy * time) / tileHeight - EPSILON) - 1);
+                for (int row = from; row <= to; row++) {
+                    Tile tile = tileCells.get(column, row);
+                    if (isBlocking(tile)) {
+                        result.setHit(time, -stepX, 0, tile);
+                        // stop just short of the edge so rounding can't leave the box overlapping the tile.
+                        double skin = EPSILON * tileWidth;
+                        result.setMoved(stepX > 0 ? Math.max(0, boundaryX - maxX - skin) : Math.min(0, boundaryX - minX + skin), dy * time);
+                        return true;
+                    }
+                }
+
+                if (stepX > 0) {
+                    columnMax = column;
+                } else {
+                    columnMin = column;
+                }
+            } else {
+                double time = timeY;
+                int row = stepY > 0 ? rowMax + 1 : rowMin - 1;
+
+                int from = stepX < 0 ? columnMin : cellX(minX + dx * time + EPSILON * tileWidth);
+                int to = stepX > 0 ? columnMax : Math.max(from, (int) Math.ceil((maxX + dx * time) / tileWidth - EPSILON) - 1);
+                for (int column = from; column <= to; column++) {
+                    Tile tile = tileCells.get(column, row);
+                    if (isBlocking(tile)) {
+                        result.setHit(time, 0, -stepY, tile);
+                        double skin = EPSILON * tileHeight;
+                        result.setMoved(dx * time, stepY > 0 ? Math.max(0, boundaryY - maxY - skin) : Math.min(0, boundaryY - minY + skin));
+                        return true;
+                    }
+                }
+
+                if (stepY > 0) {
+                    rowMax = row;
+                } else {
+                    rowMin = row;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param tile the tile, may be null.
+     * @return if the tile blocks movement.
+     */
+    private static boolean isBlocking(Tile tile) {
+        return tile != null && tile.getTileProperties() != null && tile.isSolid();
+    }
+
+    private int cellX(double x) {
+        return (int) Math.floor(x / tileWidth);
+    }
+
+    private int cellY(double y) {
+        return (int) Math.floor(y / tileHeight);
+    }
+
 }